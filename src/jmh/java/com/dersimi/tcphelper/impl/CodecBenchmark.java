@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import com.dersimi.tcphelper.example.TestPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder -> Decoder round trip of one packet through embedded channels, one operation = one packet.
+ * With -prof gc, gc.alloc.rate.norm is the number of bytes allocated per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    @Param({"-1", "0"})
+    public int compressionThreshold;
+
+    @Param({"16", "1024"})
+    public int nameLength;
+
+    private EmbeddedChannel encoder, decoder;
+
+    private TestPacket packet;
+
+    @Setup
+    public void setup() {
+        var server = new Server(0, null, false, false, null, 0);
+        server.setCompactWireFormat(compact);
+        server.setCompressionThreshold(compressionThreshold);
+        server.registerPacket(5, TestPacket::new);
+        server.freezePackets();
+
+        encoder = server.isCompressionEnabled() ? new EmbeddedChannel(new Compressor(server), new Encoder(server)) : new EmbeddedChannel(new Encoder(server));
+        decoder = new EmbeddedChannel(new Decoder(server));
+        packet = new TestPacket("a".repeat(nameLength), 42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        encoder.writeOutbound(packet);
+        decoder.writeInbound((ByteBuf) encoder.readOutbound());
+
+        Object decoded = decoder.readInbound();
+        ReferenceCountUtil.release(decoded);
+
+        return decoded;
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        encoder.writeOutbound(packet);
+
+        ByteBuf frame = encoder.readOutbound();
+        frame.release();
+
+        return frame;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write + read of the PacketByteBuf extensions and a plain int for reference, one operation = one value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketByteBufBenchmark {
+
+    @Param({"US-ASCII", "UTF-8"})
+    public String charset;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private ByteBuf byteBuf;
+
+    private PacketByteBuf buf;
+
+    private String string, unicodeString;
+
+    private String[] strings;
+
+    private UUID uniqueId;
+
+    @Setup
+    public void setup() {
+        byteBuf = Unpooled.directBuffer(64 * 1024);
+        buf = new PacketByteBuf(byteBuf, Charset.forName(charset), compact);
+        string = "The quick brown fox jumps over the lazy dog";
+        unicodeString = "Gr\u00fc\u00dfe aus K\u00f6ln, \u6771\u4eac und \ud83c\udf0d";
+        strings = new String[]{"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"};
+        uniqueId = UUID.randomUUID();
+    }
+
+    @TearDown
+    public void tearDown() {
+        byteBuf.release();
+    }
+
+    @Benchmark
+    public int int32() {
+        buf.clear();
+        buf.writeInt(123456789);
+        return buf.readInt();
+    }
+
+    @Benchmark
+    public long int64() {
+        buf.clear();
+        buf.writeLong(123456789012345L);
+        return buf.readLong();
+    }
+
+    @Benchmark
+    public int varInt() {
+        buf.clear();
+        buf.writeVarInt(123456789);
+        return buf.readVarInt();
+    }
+
+    @Benchmark
+    public long zigZagVarLong() {
+        buf.clear();
+        buf.writeZigZagVarLong(-123456789012345L);
+        return buf.readZigZagVarLong();
+    }
+
+    @Benchmark
+    public String string() {
+        buf.clear();
+        buf.writeString(string);
+        return buf.readString();
+    }
+
+    @Benchmark
+    public String unicodeString() {
+        buf.clear();
+        buf.writeString(unicodeString);
+        return buf.readString();
+    }
+
+    @Benchmark
+    public String[] stringArray() {
+        buf.clear();
+        buf.writeStrings(strings);
+        return buf.readStrings();
+    }
+
+    @Benchmark
+    public UUID uniqueId() {
+        buf.clear();
+        buf.writeUniqueId(uniqueId);
+        return buf.readUniqueId();
+    }
+}
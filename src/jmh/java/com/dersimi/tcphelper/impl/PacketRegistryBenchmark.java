@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry lookups by id and by class, as done by the decoder and the encoder for every packet.
+ * Sparse ids are spread beyond {@link PacketRegistry#DENSE_LIMIT}, so they hit the hash map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketRegistryBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean sparse;
+
+    private PacketRegistry registry;
+
+    private int[] ids;
+
+    private Class<? extends Packet>[] classes;
+
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        var server = new Server(0, null, false, false, null, 0);
+
+        ids = new int[size];
+        classes = new Class[size];
+
+        for (int i = 0; i < size; i++) {
+            var id = sparse ? PacketRegistry.DENSE_LIMIT + i * 7919 : i;
+            var packet = newPacketClass();
+
+            server.registerPacket(id, () -> packet);
+
+            ids[i] = id;
+            classes[i] = packet.getClass();
+        }
+
+        server.freezePackets();
+        registry = server.getPackets();
+    }
+
+    /**
+     * Every class loader gets its own proxy class, so this yields as many distinct packet classes as needed
+     */
+    private static Packet newPacketClass() {
+        var loader = new URLClassLoader(new URL[0], Packet.class.getClassLoader());
+
+        return (Packet) Proxy.newProxyInstance(loader, new Class<?>[]{Packet.class}, (proxy, method, args) -> {
+            if (method.getName().equals("hashCode"))
+                return System.identityHashCode(proxy);
+
+            if (method.getName().equals("equals"))
+                return proxy == args[0];
+
+            return method.getReturnType() == int.class ? -1 : null;
+        });
+    }
+
+    private int nextIndex() {
+        var index = next;
+        next = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public PacketType byId() {
+        return registry.get(ids[nextIndex()]);
+    }
+
+    @Benchmark
+    public PacketType byClass() {
+        return registry.get(classes[nextIndex()]);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.load;
+
+import com.dersimi.tcphelper.impl.Packet;
+import com.dersimi.tcphelper.impl.PacketByteBuf;
+import io.netty.channel.Channel;
+
+/**
+ * Load test packet: send timestamp + payload, echoed unchanged by the server
+ */
+public class EchoPacket implements Packet {
+    private long sendTime;
+
+    private byte[] payload;
+
+    public EchoPacket() {
+    }
+
+    public EchoPacket(long sendTime, byte[] payload) {
+        this.sendTime = sendTime;
+        this.payload = payload;
+    }
+
+    @Override
+    public void read(Channel channel, PacketByteBuf in) {
+        this.sendTime = in.readLong();
+        this.payload = new byte[in.readInt()];
+        in.readBytes(payload);
+    }
+
+    @Override
+    public void write(PacketByteBuf out) {
+        out.writeLong(sendTime);
+        out.writeInt(payload.length);
+        out.writeBytes(payload);
+    }
+
+    @Override
+    public int sizeHint() {
+        return Long.BYTES + Integer.BYTES + payload.length;
+    }
+
+    public long getSendTime() {
+        return sendTime;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
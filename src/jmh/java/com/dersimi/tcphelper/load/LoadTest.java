@@ -0,0 +1,238 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.load;
+
+import com.dersimi.tcphelper.ClientFactory;
+import com.dersimi.tcphelper.ServerFactory;
+import com.dersimi.tcphelper.impl.Client;
+import com.dersimi.tcphelper.impl.Packet;
+import com.dersimi.tcphelper.impl.Server;
+import com.dersimi.tcphelper.impl.Transport;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loopback load test: a server from {@link ServerFactory} echoes packets to N clients from {@link ClientFactory}.
+ * Every connection keeps a fixed number of packets in flight, so the result is the closed loop throughput and
+ * round trip latency of one box. Sweeps over transport, ssl, payload size and connection count.
+ * <p>
+ * Options as key=value arguments, lists are comma separated:
+ * transport=nio,epoll,io_uring ssl=false,true payload=64,1024,16384 connections=1,16 inflight=16 warmup=5 duration=10
+ */
+public final class LoadTest {
+
+    private static final int PACKET_ID = 1;
+
+    private final LongAdder messages, bytes;
+
+    private final Recorder latency;
+
+    private final int inflight;
+
+    private volatile boolean measuring;
+
+    private LoadTest(int inflight) {
+        this.messages = new LongAdder();
+        this.bytes = new LongAdder();
+        this.latency = new Recorder(TimeUnit.SECONDS.toNanos(10), 3);
+        this.inflight = inflight;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = parse(args);
+
+        var transports = list(options, "transport", "nio,epoll,io_uring");
+        var ssls = list(options, "ssl", "false,true");
+        var payloads = list(options, "payload", "64,1024,16384");
+        var connections = list(options, "connections", "1,16");
+        var inflight = Integer.parseInt(options.getOrDefault("inflight", "16"));
+        var warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        var duration = Integer.parseInt(options.getOrDefault("duration", "10"));
+
+        System.out.printf("%-9s %-5s %8s %5s %12s %10s %10s %10s %10s%n", "transport", "ssl", "payload", "conns", "msg/s", "MB/s", "p50 us", "p99 us", "p99.9 us");
+
+        for (var name : transports) {
+            var transport = Transport.valueOf(name.toUpperCase());
+
+            if (!transport.isAvailable()) {
+                System.out.println(transport + " isn't available, skipped");
+                continue;
+            }
+
+            for (var ssl : ssls)
+                for (var payload : payloads)
+                    for (var connection : connections) {
+                        var test = new LoadTest(inflight);
+                        var result = test.run(transport, Boolean.parseBoolean(ssl), Integer.parseInt(payload), Integer.parseInt(connection), warmup, duration);
+
+                        System.out.printf("%-9s %-5s %8s %5s %12.0f %10.2f %10.1f %10.1f %10.1f%n", name, ssl, payload, connection,
+                                result.messagesPerSecond(), result.megabytesPerSecond(), result.percentile(50), result.percentile(99), result.percentile(99.9));
+                    }
+        }
+    }
+
+    private Result run(Transport transport, boolean ssl, int payload, int connections, int warmup, int duration) throws Exception {
+        var serverFactory = new ServerFactory();
+        serverFactory.setPort(0);
+        serverFactory.setTransport(transport);
+        serverFactory.setSsl(ssl);
+        serverFactory.setChannelHandler(new EchoHandler());
+        serverFactory.registerPacket(PACKET_ID, EchoPacket::new);
+
+        var server = serverFactory.create();
+        var port = server.start().get(60, TimeUnit.SECONDS).getPort();
+
+        var connected = new CountDownLatch(connections);
+        var clients = new ArrayList<Client>();
+        var data = new byte[payload];
+
+        for (int i = 0; i < connections; i++) {
+            var clientFactory = new ClientFactory();
+            clientFactory.setHost("127.0.0.1");
+            clientFactory.setPort(port);
+            clientFactory.setTransport(transport);
+            clientFactory.setSsl(ssl);
+            clientFactory.setChannelHandler(new SenderHandler(data, connected));
+            clientFactory.registerPacket(PACKET_ID, EchoPacket::new);
+
+            var client = clientFactory.create();
+            clients.add(client);
+            client.start();
+        }
+
+        try {
+            if (!connected.await(60, TimeUnit.SECONDS))
+                throw new IllegalStateException("clients didn't connect");
+
+            TimeUnit.SECONDS.sleep(warmup);
+
+            messages.reset();
+            bytes.reset();
+            latency.reset();
+            measuring = true;
+
+            var start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(duration);
+
+            measuring = false;
+            var elapsed = (System.nanoTime() - start) / 1e9;
+
+            return new Result(messages.sum() / elapsed, bytes.sum() / elapsed / (1 << 20), latency.getIntervalHistogram());
+        } finally {
+            for (var client : clients)
+                client.stop(10, TimeUnit.SECONDS);
+
+            server.stop(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        var options = new HashMap<String, String>();
+
+        for (var arg : args) {
+            var index = arg.indexOf('=');
+
+            if (index <= 0)
+                throw new IllegalArgumentException("expected key=value: " + arg);
+
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+
+        return options;
+    }
+
+    private static List<String> list(Map<String, String> options, String key, String defaults) {
+        return Arrays.asList(options.getOrDefault(key, defaults).split(","));
+    }
+
+    private record Result(double messagesPerSecond, double megabytesPerSecond, Histogram histogram) {
+        double percentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    /**
+     * Server side, echoes every packet
+     */
+    @ChannelHandler.Sharable
+    private static final class EchoHandler extends SimpleChannelInboundHandler<Packet> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Packet msg) {
+            ctx.write(msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Client side, keeps inflight packets on the wire and records the round trip of every echo
+     */
+    @ChannelHandler.Sharable
+    private final class SenderHandler extends SimpleChannelInboundHandler<EchoPacket> {
+        private final byte[] payload;
+
+        private final CountDownLatch connected;
+
+        private SenderHandler(byte[] payload, CountDownLatch connected) {
+            this.payload = payload;
+            this.connected = connected;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            connected.countDown();
+
+            for (int i = 0; i < inflight; i++)
+                ctx.write(new EchoPacket(System.nanoTime(), payload));
+
+            ctx.flush();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, EchoPacket msg) {
+            var now = System.nanoTime();
+
+            if (measuring) {
+                messages.increment();
+                bytes.add(msg.getPayload().length);
+                latency.recordValue(Math.min(now - msg.getSendTime(), TimeUnit.SECONDS.toNanos(10)));
+            }
+
+            ctx.write(new EchoPacket(now, payload));
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+    }
+}
@@ -16,27 +16,84 @@
 
 package com.dersimi.tcphelper;
 
+import com.dersimi.tcphelper.impl.ChannelProfile;
 import com.dersimi.tcphelper.impl.Packet;
+import com.dersimi.tcphelper.impl.Partner;
 import com.dersimi.tcphelper.impl.Server;
+import com.dersimi.tcphelper.impl.Transport;
+import com.dersimi.tcphelper.impl.TransportRuntime;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
 
+import java.io.File;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class ServerFactory {
     private int port, timeout;
 
     private ChannelHandler channelHandler;
 
-    private boolean epoll, ssl;
+    private boolean ssl, compact;
+
+    private Transport transport;
+
+    private TransportRuntime runtime;
 
     private Charset charset;
 
-    private final Map<Integer, Packet> packets;
+    private int maxFrameSize, flushConsolidation, compressionThreshold;
+
+    private SslContext sslContext;
+
+    private SslProvider sslProvider;
+
+    private boolean metrics;
+
+    private String metricsName;
+
+    private long sslSessionCacheSize, sslSessionTimeout;
+
+    private File keyCertChainFile, keyFile;
+
+    private String keyPassword;
+
+    private int reusePortBinds;
+
+    private final Map<Integer, Consumer<Partner>> packets;
+
+    private final Map<Integer, byte[]> dictionaries;
+
+    private final Map<ChannelOption<?>, Consumer<Partner>> options;
+
+    private final Map<ChannelOption<?>, Consumer<Server>> childOptions;
+
+    private ChannelProfile profile;
+
+    private int sendQueueLimit;
+
+    private Partner.WritabilityHandler writabilityHandler;
+
+    private Duration requestTimeout;
 
     public ServerFactory() {
         packets = new HashMap<>();
+        dictionaries = new HashMap<>();
+        options = new LinkedHashMap<>();
+        childOptions = new LinkedHashMap<>();
+        maxFrameSize = Partner.DEFAULT_MAX_FRAME_SIZE;
+        compressionThreshold = -1;
+        sendQueueLimit = Partner.DEFAULT_SEND_QUEUE_LIMIT;
+        requestTimeout = Partner.DEFAULT_REQUEST_TIMEOUT;
+        transport = Transport.NIO;
+        reusePortBinds = 1;
     }
 
     /**
@@ -63,12 +120,38 @@ public class ServerFactory {
         this.channelHandler = channelHandler;
     }
 
+    /**
+     * Set transport, falls back to epoll and then nio if it isn't available
+     * @param transport NIO, EPOLL or IO_URING
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Bind the port multiple times with SO_REUSEPORT, so accepting is spread across event loops, epoll/io_uring only
+     * @param binds Number of binds, e.g. number of cores, 1 to bind once
+     */
+    public void setReusePortBinds(int binds) {
+        this.reusePortBinds = binds;
+    }
+
+    /**
+     * Share event loops and allocator with other clients/servers, replaces the transport
+     * @param runtime may be null to create own event loops
+     */
+    public void setRuntime(TransportRuntime runtime) {
+        this.runtime = runtime;
+    }
+
     /**
      * Activate epoll
      * @param epoll True if epoll should be active
+     * @deprecated use {@link #setTransport(Transport)}
      */
+    @Deprecated
     public void setEpoll(boolean epoll) {
-        this.epoll = epoll;
+        this.transport = epoll ? Transport.EPOLL : Transport.NIO;
     }
 
     /**
@@ -87,13 +170,167 @@ public class ServerFactory {
         this.charset = charset;
     }
 
+    /**
+     * Activate compact wire format, ids and lengths are written as VarInt. Both sides have to use it.
+     * @param compact True if compact wire format should be used
+     */
+    public void setCompactWireFormat(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Compress packets whose data reaches the threshold, both sides have to enable compression
+     * @param threshold Min packet size in bytes, -1 to disable
+     */
+    public void setCompressionThreshold(int threshold) {
+        this.compressionThreshold = threshold;
+    }
+
+    /**
+     * Consolidate flushes of many small packets into fewer syscalls
+     * @param explicitFlushAfterFlushes flush at the latest after this many flushes, 0 to disable
+     */
+    public void setFlushConsolidation(int explicitFlushAfterFlushes) {
+        this.flushConsolidation = explicitFlushAfterFlushes;
+    }
+
+    /**
+     * Collect per packet metrics, see Partner.getMetrics()
+     * @param metrics True if metrics should be collected
+     * @param jmxName Registers the metrics as MBeans under this name, may be null
+     */
+    public void setMetrics(boolean metrics, String jmxName) {
+        this.metrics = metrics;
+        this.metricsName = jmxName;
+    }
+
+    /**
+     * Set a channel option of the listening channels
+     * @param option e.g. ChannelOption.SO_SNDBUF
+     * @param value null to remove the option
+     */
+    public <T> void setOption(ChannelOption<T> option, T value) {
+        if (value == null)
+            options.remove(option);
+        else
+            options.put(option, partner -> partner.setOption(option, value));
+    }
+
+    /**
+     * Set an option of accepted connections
+     * @param option e.g. ChannelOption.TCP_NODELAY
+     * @param value null to remove the option
+     */
+    public <T> void setChildOption(ChannelOption<T> option, T value) {
+        if (value == null)
+            childOptions.remove(option);
+        else
+            childOptions.put(option, server -> server.setChildOption(option, value));
+    }
+
+    /**
+     * Set a profile of connection options, options set explicitly take precedence
+     * @param profile LOW_LATENCY, BULK_THROUGHPUT or null for netty's defaults
+     */
+    public void setProfile(ChannelProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Set the max number of packets trySend queues per connection while it isn't writable
+     * @param limit 0 to reject instead of queueing
+     */
+    public void setSendQueueLimit(int limit) {
+        this.sendQueueLimit = limit;
+    }
+
+    /**
+     * Set the handler called when a connection is writable again and its send queue is drained
+     * @param writabilityHandler may be null
+     */
+    public void setWritabilityHandler(Partner.WritabilityHandler writabilityHandler) {
+        this.writabilityHandler = writabilityHandler;
+    }
+
+    /**
+     * Set the time ask() waits for a response
+     * @param timeout zero to wait until the connection is closed
+     */
+    public void setRequestTimeout(Duration timeout) {
+        this.requestTimeout = timeout;
+    }
+
+    /**
+     * Set ssl provider
+     * @param sslProvider null to use OpenSSL if available, JDK otherwise
+     */
+    public void setSslProvider(SslProvider sslProvider) {
+        this.sslProvider = sslProvider;
+    }
+
+    /**
+     * Configure ssl session cache, allows resuming sessions on reconnect
+     * @param sessionCacheSize Max number of cached sessions, 0 for default
+     * @param sessionTimeout Session timeout in seconds, 0 for default
+     */
+    public void setSslSessionCache(long sessionCacheSize, long sessionTimeout) {
+        this.sslSessionCacheSize = sessionCacheSize;
+        this.sslSessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Set a prebuilt ssl context, overrides all other ssl settings
+     * @param sslContext may be null
+     */
+    public void setSslContext(SslContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Set certificate and private key, a self-signed certificate is used if not set
+     * @param keyCertChainFile X.509 certificate chain file in PEM format
+     * @param keyFile PKCS#8 private key file in PEM format
+     * @param keyPassword may be null
+     */
+    public void setSslCertificate(File keyCertChainFile, File keyFile, String keyPassword) {
+        this.keyCertChainFile = keyCertChainFile;
+        this.keyFile = keyFile;
+        this.keyPassword = keyPassword;
+    }
+
+    /**
+     * Set maximum frame size
+     * @param maxFrameSize Maximum size of a single packet on the wire in bytes
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
     /**
      * Register a packet
      * @param packetId make sure it's only a positive natural number
      * @param packet Packet
      */
     public void registerPacket(int packetId, Packet packet) {
-        packets.put(packetId, packet);
+        packets.put(packetId, partner -> partner.registerPacket(packetId, packet));
+    }
+
+    /**
+     * Register a packet with a factory, avoids reflection while decoding
+     * @param packetId make sure it's only a positive natural number
+     * @param factory Creates a new instance of the packet, e.g. TestPacket::new
+     */
+    public void registerPacket(int packetId, Supplier<? extends Packet> factory) {
+        packets.put(packetId, partner -> partner.registerPacket(packetId, factory));
+    }
+
+    /**
+     * Register a preset compression dictionary for a packet, see DictionaryTrainer. Both sides need the same one.
+     * @param packetId id of a registered packet
+     * @param dictionary The dictionary
+     */
+    public void registerDictionary(int packetId, byte[] dictionary) {
+        dictionaries.put(packetId, dictionary);
     }
 
     /**
@@ -101,13 +338,49 @@ public class ServerFactory {
      * @return Server
      */
     public Server create() {
-        var s = new Server(port, channelHandler, epoll, ssl, charset, timeout);
+        var s = new Server(port, channelHandler, false, ssl, charset, timeout);
+
+        s.setTransport(transport);
+        s.setRuntime(runtime);
+        s.setReusePortBinds(reusePortBinds);
+        s.setMaxFrameSize(maxFrameSize);
+        s.setFlushConsolidation(flushConsolidation);
+        s.setCompactWireFormat(compact);
+        s.setCompressionThreshold(compressionThreshold);
+        s.setMetricsEnabled(metrics);
+        s.setProfile(profile);
+        s.setSendQueueLimit(sendQueueLimit);
+        s.setWritabilityHandler(writabilityHandler);
+        s.setRequestTimeout(requestTimeout);
+
+        for(var option : options.values())
+            option.accept(s);
+
+        for(var option : childOptions.values())
+            option.accept(s);
 
-        for(var entry : packets.entrySet())
-            s.registerPacket(entry.getKey(), entry.getValue());
+        s.setSslProvider(sslProvider);
+        s.setSslSessionCache(sslSessionCacheSize, sslSessionTimeout);
+
+        if (sslContext != null)
+            s.setSslContext(sslContext);
+
+        if (keyCertChainFile != null)
+            s.setSslCertificate(keyCertChainFile, keyFile, keyPassword);
+
+        for(var registration : packets.values())
+            registration.accept(s);
+
+        for(var entry : dictionaries.entrySet())
+            s.registerDictionary(entry.getKey(), entry.getValue());
 
         //is inefficient, however, it makes the checking for invalid arguments much easier.
 
+        s.freezePackets();
+
+        if (metrics && metricsName != null)
+            s.registerMetricsMBeans(metricsName);
+
         return s;
     }
 }
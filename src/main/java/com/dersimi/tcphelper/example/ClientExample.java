@@ -29,7 +29,7 @@ public class ClientExample extends SimpleChannelInboundHandler<Packet> {
         //own logic.
 
         //Register packets
-        clientFactory.registerPacket(5, new TestPacket());
+        clientFactory.registerPacket(5, TestPacket::new);
 
         //Init client
         try {
@@ -16,9 +16,9 @@ public class ServerExample extends SimpleChannelInboundHandler<Packet> {
         serverFactory.setTimeout(10);//Server will terminate connection after 10sec => ReadTimeout
 
         //Register packets
-        serverFactory.registerPacket(5, new TestPacket());
+        serverFactory.registerPacket(5, TestPacket::new);
 
-        //init server
+        //init server, blocks until it's closed, start() returns a future instead
         try {
             serverFactory.create().init();
         } catch (InterruptedException e) {
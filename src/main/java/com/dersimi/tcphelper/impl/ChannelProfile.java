@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named sets of connection options, explicitly set options take precedence
+ */
+public enum ChannelProfile {
+    /**
+     * Nagle off, small socket buffers and watermarks, so little data waits in queues
+     */
+    LOW_LATENCY(Map.of(
+            ChannelOption.TCP_NODELAY, true,
+            ChannelOption.SO_SNDBUF, 32 * 1024,
+            ChannelOption.SO_RCVBUF, 32 * 1024,
+            ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8 * 1024, 32 * 1024),
+            ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 1024, 16 * 1024))),
+
+    /**
+     * Large socket buffers and watermarks, so long fat links stay busy
+     */
+    BULK_THROUGHPUT(Map.of(
+            ChannelOption.TCP_NODELAY, true,
+            ChannelOption.SO_SNDBUF, 1024 * 1024,
+            ChannelOption.SO_RCVBUF, 1024 * 1024,
+            ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(512 * 1024, 2 * 1024 * 1024),
+            ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(512, 16 * 1024, 256 * 1024)));
+
+    private final Map<ChannelOption<?>, Object> options;
+
+    ChannelProfile(Map<ChannelOption<?>, Object> options) {
+        this.options = Collections.unmodifiableMap(new LinkedHashMap<>(options));
+    }
+
+    /**
+     * @return Connection options of this profile
+     */
+    public Map<ChannelOption<?>, Object> getOptions() {
+        return options;
+    }
+}
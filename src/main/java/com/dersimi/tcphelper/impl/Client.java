@@ -18,19 +18,39 @@ package com.dersimi.tcphelper.impl;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.epoll.EpollSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 
+import javax.net.ssl.SSLException;
+import java.io.File;
 import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Client extends Partner {
     private EventLoopGroup eventLoopGroup;
 
+    private TransportRuntime retained;//reference on the shared runtime held while running
+
+    private volatile Channel channel;
+
+    private Bootstrap bootstrap;//reused by every reconnect
+
     protected final String host;
 
     private final ConnectionHandler connectionHandler;
 
-    protected int failedAttempts, reconnectTime;
+    protected int failedAttempts;
+
+    private int reconnectAttempts;//since the last established connection, only touched by the close listener
+
+    protected ReconnectPolicy reconnectPolicy;
+
+    private File trustCertCollectionFile;
 
     /**
      * Client constructor
@@ -38,12 +58,13 @@ public class Client extends Partner {
      * @param host              Host address
      * @param port              Port number
      * @param channelHandler    Netty ChannelHandler, may be null
-     * @param epoll             Epoll
+     * @param epoll             Epoll, see {@link #setTransport(Transport)} for io_uring
      * @param ssl               Ssl
      * @param charset           Charset
      * @param connectionHandler A connection handler delivers a ChannelFuture and is always required.
      * @param timeout           After this time, the client send its alive packet. Disable it with 0
-     * @param reconnectTime     Reconnect time in seconds. Disable auto reconnection with 0
+     * @param reconnectTime     Reconnect time in seconds. Disable auto reconnection with 0, see
+     *                          {@link #setReconnectPolicy(ReconnectPolicy)} for backoff
      */
     public Client(String host, int port, ChannelHandler channelHandler, boolean epoll, boolean ssl, Charset charset, ConnectionHandler connectionHandler, int timeout, int reconnectTime) {
         super(port, channelHandler, epoll, ssl, charset, timeout);
@@ -51,39 +72,168 @@ public class Client extends Partner {
         this.host = host;
         this.connectionHandler = connectionHandler;
         this.failedAttempts = 0;
-        this.reconnectTime = reconnectTime;
+        this.reconnectPolicy = reconnectTime != 0 ? ReconnectPolicy.fixed(Duration.ofSeconds(reconnectTime)) : null;
+    }
+
+    /**
+     * Set the auto reconnection policy, reconnects use the event loops and bootstrap of the running client
+     *
+     * @param reconnectPolicy The policy, null to disable auto reconnection
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    /**
+     * Set trusted certificates, if not set, every server certificate is accepted
+     *
+     * @param trustCertCollectionFile X.509 certificate collection file in PEM format
+     */
+    public void setSslTrustCertificate(File trustCertCollectionFile) {
+        this.trustCertCollectionFile = Objects.requireNonNull(trustCertCollectionFile, "trustCertCollectionFile is null");
+    }
+
+    @Override
+    protected SslContext createSslContext() throws SSLException {
+        var builder = SslContextBuilder.forClient();
+
+        if (trustCertCollectionFile != null)
+            builder.trustManager(trustCertCollectionFile);
+        else
+            builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+
+        var context = configureSsl(builder).build();
+
+        //OpenSSL keeps no client sessions by default, without them reconnects can't resume
+        if (context.sessionContext() instanceof OpenSslSessionContext sessionContext)
+            sessionContext.setSessionCacheEnabled(true);
+
+        return context;
     }
 
     /**
-     * Initialize Client
+     * Initialize Client, blocks until the connection is closed
      */
     @Override
     public void init() throws InterruptedException {
-        shutdown();//in case of reinitialization
+        await(start()).closeFuture().syncUninterruptibly();
+    }
+
+    /**
+     * @return Channel of the current connection or connect attempt, null if not started
+     */
+    public Channel getChannel() {
+        return channel;
+    }
 
-        eventLoopGroup = createGroup(0);
+    /**
+     * Start client without blocking, without auto reconnection it's shut down once the connection is closed
+     *
+     * @return Future completed with the channel once connected
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized CompletableFuture<Channel> start() {
+        //retained before release() drops the previous reference, so a shared runtime survives reinitialization
+        var reference = runtime != null ? runtime.retain() : null;
+
+        release();//in case of reinitialization
+
+        retained = reference;
+
+        if (closeFuture.isDone())
+            closeFuture = new CompletableFuture<>();
 
-        var b = new Bootstrap();
+        freezePackets();
+        initSsl();//kept across reconnects, so the client can resume its ssl session
 
-        b.group(eventLoopGroup).channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class).handler(new Initializer(this));
+        eventLoopGroup = runtime != null ? runtime.getWorkerGroup() : createGroup(0);
 
-        b.connect(host, port).addListener((ChannelFuture f) -> {
+        bootstrap = new Bootstrap();
+
+        bootstrap.group(eventLoopGroup).channel(transport.channelClass()).handler(new Initializer(this));
+
+        for (var option : connectionOptions(options).entrySet())
+            bootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+
+        reconnectAttempts = 0;
+
+        return completable(connect());
+    }
+
+    private ChannelFuture connect() {
+        var future = bootstrap.connect(host, port).addListener((ChannelFuture f) -> {
             if (connectionHandler != null) {
                 failedAttempts = f.isSuccess() ? 0 : failedAttempts + 1;
 
                 connectionHandler.run(f, failedAttempts);
             }
-        }).sync().channel().closeFuture().syncUninterruptibly();
+        });
+
+        var channel = this.channel = future.channel();
+
+        //a failed connect closes the channel as well
+        channel.closeFuture().addListener(f -> closed(channel, future));
+
+        return future;
+    }
+
+    //runs on the event loop of the closed channel
+    private void closed(Channel channel, ChannelFuture connect) {
+        if (this.channel != channel)//shut down or restarted
+            return;
+
+        reconnectAttempts = connect.isSuccess() ? 1 : reconnectAttempts + 1;
+
+        var policy = reconnectPolicy;
+
+        if (policy == null || policy.isExhausted(reconnectAttempts)) {
+            CompletableFuture.runAsync(() -> {
+                synchronized (this) {
+                    if (this.channel == channel)
+                        shutdown();
+                }
+            });
+        } else {
+            //the group stays alive, the reconnect takes the lock off the loop since shutdown() waits for the loops
+            channel.eventLoop().schedule(() -> CompletableFuture.runAsync(() -> reconnect(channel)),
+                    policy.delay(reconnectAttempts), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void reconnect(Channel previous) {
+        if (channel == previous && !closeFuture.isDone())
+            connect();
     }
 
     /**
      * Terminate client
      */
     @Override
-    public void shutdown() {
-        if (eventLoopGroup != null)
+    public synchronized void shutdown() {
+        release();
+
+        closeFuture.complete(null);
+    }
+
+    private void release() {
+        //close the channel before its event loop, io_uring loops don't terminate with pending operations
+        var channel = this.channel;
+
+        this.channel = null;//its close listener must not reconnect
+
+        if (channel != null)
+            channel.close().awaitUninterruptibly();
+
+        bootstrap = null;
+
+        if (retained != null)
+            retained.release();//shared groups keep running until the runtime's last reference is released
+        else if (eventLoopGroup != null)
             eventLoopGroup.shutdownGracefully();
 
+        retained = null;
+
         eventLoopGroup = null;
     }
 
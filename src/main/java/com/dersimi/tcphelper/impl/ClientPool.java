@@ -0,0 +1,224 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps several connections to the same server, one per client, and dispatches packets across them. A single
+ * connection is limited by its congestion window, multiple ones are not.
+ */
+public class ClientPool {
+    private final List<Client> clients;
+
+    private final Dispatch dispatch;
+
+    private final AtomicInteger next;
+
+    private TransportRuntime runtime;//created on start if the clients don't share one, so they share these loops
+
+    /**
+     * @param clients  Clients connecting to the same server, use a reconnect policy to keep connections alive
+     * @param dispatch Dispatch of packets without key
+     * @throws IllegalStateException If there are no clients
+     */
+    public ClientPool(List<Client> clients, Dispatch dispatch) {
+        this.clients = List.copyOf(clients);
+        this.dispatch = Objects.requireNonNull(dispatch, "dispatch is null");
+        this.next = new AtomicInteger();
+
+        if (this.clients.isEmpty())
+            throw new IllegalStateException("clients is empty");
+    }
+
+    /**
+     * Start all clients without blocking
+     *
+     * @return Future completed once all clients are connected
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (runtime == null && clients.get(0).runtime == null) {
+            runtime = new TransportRuntime(clients.get(0).getTransport());
+
+            for (var client : clients)
+                client.setRuntime(runtime);
+        }
+
+        return CompletableFuture.allOf(clients.stream().map(Client::start).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Terminate all clients and wait for them, must not be called on an event loop
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of timeout
+     * @return True if all clients were shut down within the timeout
+     */
+    public synchronized boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadline = System.nanoTime() + unit.toNanos(timeout);
+        var stopped = true;
+
+        for (var client : clients)
+            stopped &= client.stop(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+
+        if (runtime != null) {
+            for (var client : clients)
+                client.setRuntime(null);
+
+            runtime.release();//the loops terminate once the clients released their references too
+            runtime = null;
+        }
+
+        return stopped;
+    }
+
+    /**
+     * @return Future completed once all clients are shut down
+     */
+    public CompletableFuture<Void> closeFuture() {
+        return CompletableFuture.allOf(clients.stream().map(Client::closeFuture).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * @return The clients of this pool
+     */
+    public List<Client> getClients() {
+        return clients;
+    }
+
+    /**
+     * Select a connected channel according to the dispatch
+     *
+     * @return The channel, null if no client is connected
+     */
+    public Channel channel() {
+        var size = clients.size();
+        var start = Math.floorMod(next.getAndIncrement(), size);//ties of LEAST_PENDING rotate as well
+
+        Channel selected = null;
+        long selectedBytes = -1;
+
+        for (int i = 0; i < size; i++) {
+            var channel = clients.get((start + i) % size).getChannel();
+
+            if (channel == null || !channel.isActive())
+                continue;
+
+            if (dispatch == Dispatch.ROUND_ROBIN)
+                return channel;
+
+            //all clients share their options and therefore their watermarks, so the most room means the fewest
+            //pending bytes, includes writes still queued to the event loop
+            var bytes = channel.bytesBeforeUnwritable();
+
+            if (bytes > selectedBytes) {
+                selected = channel;
+                selectedBytes = bytes;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Select the channel pinned to a key, packets with the same key keep their order
+     *
+     * @param key The key, e.g. a session id
+     * @return The channel, null if the pinned client isn't connected
+     */
+    public Channel channel(Object key) {
+        var channel = clients.get(Math.floorMod(key.hashCode(), clients.size())).getChannel();
+
+        return channel != null && channel.isActive() ? channel : null;
+    }
+
+    /**
+     * Send a packet on the channel selected by the dispatch
+     *
+     * @param packet The packet
+     * @return Write future
+     * @throws IllegalStateException If no client is connected
+     */
+    public ChannelFuture send(Packet packet) {
+        return send(channel(), packet);
+    }
+
+    /**
+     * Send a packet on the channel pinned to a key
+     *
+     * @param key    The key
+     * @param packet The packet
+     * @return Write future
+     * @throws IllegalStateException If the pinned client isn't connected
+     */
+    public ChannelFuture send(Object key, Packet packet) {
+        return send(channel(key), packet);
+    }
+
+    /**
+     * Send a packet on the channel selected by the dispatch, see {@link Partner#trySend(Channel, Packet)}
+     *
+     * @param packet The packet
+     * @return Result, REJECTED if no client is connected
+     */
+    public SendResult trySend(Packet packet) {
+        return trySend(channel(), packet);
+    }
+
+    /**
+     * Send a packet on the channel pinned to a key, see {@link Partner#trySend(Channel, Packet)}
+     *
+     * @param key    The key
+     * @param packet The packet
+     * @return Result, REJECTED if the pinned client isn't connected
+     */
+    public SendResult trySend(Object key, Packet packet) {
+        return trySend(channel(key), packet);
+    }
+
+    private static ChannelFuture send(Channel channel, Packet packet) {
+        if (channel == null)
+            throw new IllegalStateException("client isn't connected");
+
+        return channel.writeAndFlush(packet);
+    }
+
+    private SendResult trySend(Channel channel, Packet packet) {
+        return channel != null ? clients.get(0).trySend(channel, packet) : SendResult.REJECTED;//queue is per channel
+    }
+
+    public enum Dispatch {
+        /**
+         * Next connected channel in turn
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Connected channel with the most bytes left before it becomes unwritable, i.e. the fewest pending outbound
+         * bytes
+         */
+        LEAST_PENDING
+    }
+}
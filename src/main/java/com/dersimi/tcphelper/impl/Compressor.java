@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses frames produced by the {@link Encoder} if their packet data reaches the compression threshold
+ * or the packet has a preset dictionary.
+ * Frame layout: frame length, uncompressed size (0 if not compressed), packet id + packet data (deflated if compressed).
+ */
+public class Compressor extends MessageToMessageEncoder<ByteBuf> {
+
+    private final Partner partner;
+
+    private final Deflater deflater;//one per channel, reset after every frame
+
+    private final int lengthWidth;
+
+    protected Compressor(Partner partner) {
+        this.partner = partner;
+        this.deflater = new Deflater();
+        this.lengthWidth = partner.getFrameLengthWidth();
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) {
+        if (frame.readableBytes() <= lengthWidth) {
+            out.add(frame.retain());//empty, the encoder dropped the packet and logged it
+            return;
+        }
+
+        var body = frame.slice(frame.readerIndex() + lengthWidth, frame.readableBytes() - lengthWidth);
+
+        if (partner.readHeaderInt(body) != 0) {
+            out.add(frame.retain());//already compressed
+            return;
+        }
+
+        var header = body.duplicate();
+        var packetId = partner.readHeaderInt(header);
+
+        if (packetId == CorrelatedPacket.REQUEST_ID || packetId == CorrelatedPacket.RESPONSE_ID) {
+            PacketByteBuf.readVarLong(header);//correlation id, the dictionary belongs to the packet behind it
+            packetId = partner.readHeaderInt(header);
+        }
+
+        var type = partner.getPackets().get(packetId);
+        var dictionary = type != null ? type.getDictionary() : null;
+
+        //packets with a dictionary are always worth a try, they are usually too small for plain deflate
+        if (dictionary == null && (partner.compressionThreshold == -1 || body.readableBytes() < partner.compressionThreshold)) {
+            out.add(frame.retain());
+            return;
+        }
+
+        var compressed = compress(ctx, body, dictionary);
+
+        if (compressed == null)
+            out.add(frame.retain());
+        else
+            out.add(compressed);
+    }
+
+    /**
+     * Deflates the frame body into a new frame
+     *
+     * @param ctx        Context, used for allocation
+     * @param body       Packet id + packet data
+     * @param dictionary Preset dictionary, may be null
+     * @return The compressed frame or null if it isn't smaller than the uncompressed one
+     */
+    private ByteBuf compress(ChannelHandlerContext ctx, ByteBuf body, byte[] dictionary) {
+        var size = body.readableBytes();
+        var compressed = ctx.alloc().ioBuffer(lengthWidth + Integer.BYTES + size);
+
+        compressed.writeZero(lengthWidth);
+        partner.writeHeaderInt(compressed, size);
+
+        var limit = compressed.writerIndex() + size;//compressing only pays off below this index
+
+        if (dictionary != null)
+            deflater.setDictionary(dictionary);//the zlib header announces its checksum
+
+        deflater.setInput(body.nioBuffer());
+        deflater.finish();
+
+        try {
+            while (!deflater.finished() && compressed.writerIndex() < limit) {
+                var written = deflater.deflate(compressed.nioBuffer(compressed.writerIndex(), limit - compressed.writerIndex()));
+                compressed.writerIndex(compressed.writerIndex() + written);
+            }
+
+            if (!deflater.finished() || compressed.writerIndex() - lengthWidth > partner.maxFrameSize) {
+                compressed.release();
+                return null;
+            }
+        } finally {
+            deflater.reset();
+        }
+
+        partner.setFrameLength(compressed, 0, compressed.writerIndex() - lengthWidth);
+
+        return compressed;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        deflater.end();
+
+        super.handlerRemoved(ctx);
+    }
+}
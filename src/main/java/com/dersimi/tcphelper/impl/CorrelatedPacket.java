@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * Packet wrapped with a correlation id, written as pseudo packet id + VarLong id in front of the packet's own id.
+ * Reference counting is delegated to the wrapped packet, so pooled packets are released with their wrapper.
+ */
+abstract class CorrelatedPacket implements Packet, ReferenceCounted {
+    /**
+     * Pseudo packet ids, -1 is the alive packet and -2 marks unregistered packets
+     */
+    static final int REQUEST_ID = -3, RESPONSE_ID = -4;
+
+    final long id;
+
+    final Packet packet;
+
+    CorrelatedPacket(long id, Packet packet) {
+        this.id = id;
+        this.packet = packet;
+    }
+
+    /**
+     * @return REQUEST_ID or RESPONSE_ID
+     */
+    abstract int pseudoId();
+
+    @Override
+    public void read(Channel channel, PacketByteBuf in) {
+        throw new UnsupportedOperationException("read by the decoder");
+    }
+
+    @Override
+    public void write(PacketByteBuf out) {
+        throw new UnsupportedOperationException("written by the encoder");
+    }
+
+    @Override
+    public int sizeHint() {
+        return packet.sizeHint();
+    }
+
+    @Override
+    public int refCnt() {
+        return packet instanceof ReferenceCounted counted ? counted.refCnt() : 1;
+    }
+
+    @Override
+    public ReferenceCounted retain() {
+        ReferenceCountUtil.retain(packet);
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted retain(int increment) {
+        ReferenceCountUtil.retain(packet, increment);
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch() {
+        ReferenceCountUtil.touch(packet);
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        ReferenceCountUtil.touch(packet, hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return ReferenceCountUtil.release(packet);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return ReferenceCountUtil.release(packet, decrement);
+    }
+}
@@ -17,47 +17,214 @@
 package com.dersimi.tcphelper.impl;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class Decoder extends ByteToMessageDecoder {
 
-    private final Logger LOGGER = LogManager.getLogger(Decoder.class);
+    private static final Logger LOGGER = LogManager.getLogger(Decoder.class);
 
     private final Partner partner;
 
+    private final PacketByteBuf buf;//one wrapper per channel, rewrapped for every packet
+
+    private final Inflater inflater;//one per channel, reset after every frame
+
     protected Decoder(Partner partner) {
         this.partner = partner;
+        this.buf = new PacketByteBuf(Unpooled.EMPTY_BUFFER, partner.charset, partner.compact);
+        this.inflater = new Inflater();
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        var packetId = in.readInt();
+        var headerIndex = in.readerIndex();
+        var frameLength = readFrameLength(in);
+
+        if (frameLength == -1)
+            return;//frame header has not arrived yet
+
+        if (frameLength < (partner.compact ? 1 : Integer.BYTES) || frameLength > partner.maxFrameSize) {
+            in.skipBytes(in.readableBytes());
+            ctx.close();//stream can't be resynchronized
+
+            throw new TooLongFrameException("Invalid frame length " + frameLength + " from " + ctx.channel().remoteAddress());
+        }
+
+        if (in.readableBytes() < frameLength) {
+            in.readerIndex(headerIndex);
+            return;//wait until the whole frame has arrived
+        }
+
+        //zero copy view of the frame, the frame is consumed even if the packet doesn't read all of its data
+        var frame = in.readSlice(frameLength);
+
+        if (partner.isCompressionEnabled()) {
+            var size = partner.readHeaderInt(frame);
+
+            if (size != 0) {
+                var inflated = inflate(ctx, frame, size);
+
+                try {
+                    decodePacket(ctx, inflated, in.readerIndex() - headerIndex, out);
+                } finally {
+                    inflated.release();
+                }
+
+                return;
+            }
+        }
+
+        decodePacket(ctx, frame, in.readerIndex() - headerIndex, out);
+    }
+
+    /**
+     * Reads packet id and packet
+     *
+     * @param ctx   Context
+     * @param frame Packet id + packet data
+     * @param size  Wire size of the frame including its header, for metrics
+     * @param out   Decoded packets
+     */
+    private void decodePacket(ChannelHandlerContext ctx, ByteBuf frame, int size, List<Object> out) {
+        var packetId = partner.readHeaderInt(frame);
 
         if(packetId == -1) {
-            LOGGER.debug("Alive packet from " + ctx.channel().remoteAddress().toString() + " received.");
+            LOGGER.debug("Alive packet from {} received.", ctx.channel().remoteAddress());
             return;
         }
 
+        var correlation = packetId;//request/response pseudo id in front of the packet id
+        var correlationId = 0L;
+
+        if (packetId == CorrelatedPacket.REQUEST_ID || packetId == CorrelatedPacket.RESPONSE_ID) {
+            correlationId = PacketByteBuf.readVarLong(frame);
+            packetId = partner.readHeaderInt(frame);
+        }
+
         if (packetId < 0)
-            LOGGER.warn("Data corruption happened! Packet id: " + packetId);
+            LOGGER.warn("Data corruption happened! Packet id: {}", packetId);
+
+        var type = partner.getPackets().get(packetId);
+
+        if (type == null)
+            throw new IllegalStateException("there is no packet with id " + packetId);
 
-        var packet = partner.getPacketById(packetId).getClass().getDeclaredConstructor().newInstance();
+        var metrics = type.getMetrics();
+        var start = metrics != null ? System.nanoTime() : 0L;
 
-        LOGGER.debug(String.format("Reading packet %s(id = %d)", packet.getClass().getSimpleName(), packetId));
+        var packet = type.create();
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Reading packet {}(id = {})", packet.getClass().getSimpleName(), packetId);
 
         try {
-            packet.read(ctx.channel(), new PacketByteBuf(in, partner.charset));
+            packet.read(ctx.channel(), buf.wrap(frame));
         } catch (Exception e) {
             e.printStackTrace();
-            LOGGER.error(String.format("Exception while reading packet %s(id = %d) occurred:", packet.getClass().getSimpleName(), packetId), e);
+            LOGGER.error("Exception while reading packet {}(id = {}) occurred:", packet.getClass().getSimpleName(), packetId, e);
+        } finally {
+            buf.wrap(Unpooled.EMPTY_BUFFER);//don't keep the buffer reachable
+        }
+
+        if (metrics != null)
+            metrics.recordDecode(size, System.nanoTime() - start);
+
+        if (correlation == CorrelatedPacket.REQUEST_ID)
+            out.add(new Request(ctx.channel(), correlationId, packet));
+        else if (correlation == CorrelatedPacket.RESPONSE_ID)
+            out.add(new Response(correlationId, packet));
+        else
+            out.add(packet);
+    }
+
+    /**
+     * Inflates a compressed frame body
+     *
+     * @param ctx        Context, used for allocation
+     * @param compressed Deflated packet id + packet data
+     * @param size       Uncompressed size
+     * @return New buffer with the inflated data, has to be released
+     */
+    private ByteBuf inflate(ChannelHandlerContext ctx, ByteBuf compressed, int size) throws DataFormatException {
+        if (size < 0 || size > partner.maxFrameSize)
+            throw new CorruptedFrameException("Invalid uncompressed size " + size + " from " + ctx.channel().remoteAddress());
+
+        var inflated = ctx.alloc().heapBuffer(size, size);
+
+        try {
+            inflater.setInput(compressed.nioBuffer());
+
+            while (!inflater.finished() && inflated.isWritable()) {
+                var read = inflater.inflate(inflated.nioBuffer(inflated.writerIndex(), inflated.writableBytes()));
+
+                if (read == 0 && inflater.needsDictionary()) {
+                    var dictionary = partner.getPackets().getDictionary(inflater.getAdler());
+
+                    if (dictionary == null)
+                        throw new CorruptedFrameException("Unknown compression dictionary checksum " + Integer.toHexString(inflater.getAdler()) + " from " + ctx.channel().remoteAddress());
+
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+
+                if (read == 0 && inflater.needsInput())
+                    break;
+
+                inflated.writerIndex(inflated.writerIndex() + read);
+            }
+
+            if (!inflater.finished() || inflated.isWritable())
+                throw new CorruptedFrameException("Compressed frame doesn't match its uncompressed size " + size + " from " + ctx.channel().remoteAddress());
+        } catch (Exception e) {
+            inflated.release();
+            throw e;
+        } finally {
+            inflater.reset();
+        }
+
+        return inflated;
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        inflater.end();
+    }
+
+    /**
+     * Reads the frame length, VarInt in compact mode, int otherwise
+     *
+     * @param in Inbound bytes
+     * @return frame length or -1 if the header is incomplete, the reader index is only moved if the header is complete
+     */
+    private int readFrameLength(ByteBuf in) {
+        if (!partner.compact)
+            return in.readableBytes() < Integer.BYTES ? -1 : in.readInt();
+
+        var value = 0;
+
+        for (int i = 0, index = in.readerIndex(); i < 5 && index < in.writerIndex(); i++, index++) {
+            var b = in.getByte(index);
+            value |= (b & 0x7F) << (i * 7);
+
+            if (b >= 0) {
+                in.readerIndex(index + 1);
+                return value;
+            }
         }
 
-        ctx.fireChannelRead(packet);
-        ctx.fireChannelReadComplete();
+        if (in.readableBytes() >= 5)
+            return Integer.MIN_VALUE;//VarInt too long, rejected as invalid length
+
+        return -1;
     }
 }
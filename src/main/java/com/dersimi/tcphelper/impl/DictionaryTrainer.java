@@ -0,0 +1,195 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Trains preset compression dictionaries offline from sample packets, see {@link Partner#registerDictionary(int, byte[])}.
+ * <p>
+ * The samples are encoded with {@link Packet#write(PacketByteBuf)}, then the encodings sharing the most content with
+ * the other samples are concatenated. The most representative sample ends up at the end of the dictionary, where
+ * deflate reaches it with the shortest distances.
+ */
+public final class DictionaryTrainer {
+    /**
+     * Deflate window size, dictionary bytes before the last 32 KiB are never used
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int GRAM_LENGTH = 8;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * Train a dictionary for the default wire format (US_ASCII, not compact)
+     *
+     * @param samples Sample packets of one packet type, e.g. captured from real traffic
+     * @return The dictionary
+     */
+    public static byte[] train(Collection<? extends Packet> samples) {
+        return train(samples, StandardCharsets.US_ASCII, false, MAX_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Train a dictionary, charset and wire format have to match the ones of the partner using it
+     *
+     * @param samples Sample packets of one packet type, e.g. captured from real traffic
+     * @param charset Charset of the partner
+     * @param compact True if the partner uses the compact wire format
+     * @param maxSize Max dictionary size in bytes, at most {@link #MAX_DICTIONARY_SIZE}
+     * @return The dictionary
+     */
+    public static byte[] train(Collection<? extends Packet> samples, Charset charset, boolean compact, int maxSize) {
+        Objects.requireNonNull(samples, "samples is null");
+        Objects.requireNonNull(charset, "charset is null");
+
+        if (samples.isEmpty())
+            throw new IllegalStateException("no samples");
+
+        if (maxSize <= 0 || maxSize > MAX_DICTIONARY_SIZE)
+            throw new IllegalStateException("maxSize is invalid");
+
+        var encodings = encode(samples, charset, compact);
+        var grams = new ArrayList<Map<Long, Integer>>(encodings.size());
+
+        //number of samples containing each gram
+        var frequencies = new HashMap<Long, Integer>();
+
+        for (var encoding : encodings) {
+            var counts = grams(encoding);
+            grams.add(counts);
+
+            for (var gram : counts.keySet())
+                frequencies.merge(gram, 1, Integer::sum);
+        }
+
+        //score = average frequency of the grams of a sample
+        var scores = new HashMap<Encoding, Double>();
+
+        for (int i = 0; i < encodings.size(); i++) {
+            long sum = 0, count = 0;
+
+            for (var entry : grams.get(i).entrySet()) {
+                sum += (long) frequencies.get(entry.getKey()) * entry.getValue();
+                count += entry.getValue();
+            }
+
+            scores.put(encodings.get(i), count == 0 ? 0 : (double) sum / count);
+        }
+
+        //pick the best samples until the dictionary is full, then put the best one last
+        var picked = new ArrayList<Encoding>();
+        var size = 0;
+
+        var sorted = new ArrayList<>(encodings);
+        sorted.sort(Comparator.comparingDouble((Encoding e) -> scores.get(e)).reversed());
+
+        for (var encoding : sorted) {
+            if (size + encoding.bytes.length > maxSize)
+                continue;
+
+            picked.add(encoding);
+            size += encoding.bytes.length;
+        }
+
+        if (picked.isEmpty()) {//every sample is larger than maxSize, use the tail of the best one
+            var best = sorted.get(0).bytes;
+            var dictionary = new byte[maxSize];
+            System.arraycopy(best, best.length - maxSize, dictionary, 0, maxSize);
+
+            return dictionary;
+        }
+
+        var dictionary = new byte[size];
+        var index = size;
+
+        for (var encoding : picked) {
+            index -= encoding.bytes.length;
+            System.arraycopy(encoding.bytes, 0, dictionary, index, encoding.bytes.length);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Encodes the samples, identical encodings are only kept once
+     */
+    private static List<Encoding> encode(Collection<? extends Packet> samples, Charset charset, boolean compact) {
+        var encodings = new LinkedHashSet<Encoding>();
+        var buf = Unpooled.buffer();
+
+        try {
+            var packetBuf = new PacketByteBuf(buf, charset, compact);
+
+            for (var sample : samples) {
+                buf.clear();
+                sample.write(packetBuf);
+                encodings.add(new Encoding(ByteBufUtil.getBytes(buf)));
+            }
+        } finally {
+            buf.release();
+        }
+
+        return new ArrayList<>(encodings);
+    }
+
+    /**
+     * Counts the grams (byte sequences of {@link #GRAM_LENGTH}) of an encoding
+     */
+    private static Map<Long, Integer> grams(Encoding encoding) {
+        Map<Long, Integer> grams = new HashMap<>();
+        var bytes = encoding.bytes;
+
+        for (int i = 0; i + GRAM_LENGTH <= bytes.length; i++) {
+            var gram = 0L;
+
+            for (int j = 0; j < GRAM_LENGTH; j++)
+                gram = gram << 8 | (bytes[i + j] & 0xFF);
+
+            grams.merge(gram, 1, Integer::sum);
+        }
+
+        return grams;
+    }
+
+    private record Encoding(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Encoding e && Arrays.equals(bytes, e.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.dersimi.tcphelper.impl;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import org.apache.logging.log4j.LogManager;
@@ -24,37 +25,105 @@ import org.apache.logging.log4j.Logger;
 
 public class Encoder extends MessageToByteEncoder<Packet> {
 
-    private final Logger LOGGER = LogManager.getLogger(Encoder.class);
+    private static final Logger LOGGER = LogManager.getLogger(Encoder.class);
+
+    /**
+     * Frame length + compression marker + correlation marker and id + packet id, upper bound
+     */
+    protected static final int HEADER_SIZE = Integer.BYTES * 4 + 10;//VarLong takes up to 10 bytes
 
     private final Partner partner;
 
+    private final PacketByteBuf buf;//one wrapper per channel, rewrapped for every packet
+
+    private final int lengthWidth;//bytes reserved for the frame length
+
+    private PacketType type;//type of the packet being encoded, resolved in allocateBuffer
+
     protected Encoder(Partner partner) {
         this.partner = partner;
+        this.buf = new PacketByteBuf(Unpooled.EMPTY_BUFFER, partner.charset, partner.compact);
+        this.lengthWidth = partner.getFrameLengthWidth();
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Packet msg, boolean preferDirect) {
+        type = partner.getPackets().get((msg instanceof CorrelatedPacket correlated ? correlated.packet : msg).getClass());
+
+        var size = msg.sizeHint();
+
+        if (size < 0)
+            size = type != null ? type.estimateSize() : 0;
+
+        return preferDirect ? ctx.alloc().ioBuffer(HEADER_SIZE + size) : ctx.alloc().heapBuffer(HEADER_SIZE + size);
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Packet msg, ByteBuf out) {
-        int packetId = partner.getIdByPacket(msg);
+        var type = this.type;
+        this.type = null;
 
-        LOGGER.debug(String.format("Start encoding of %s with id = %d", msg.getClass().getSimpleName(), packetId));
+        var correlated = msg instanceof CorrelatedPacket c ? c : null;
+        var packet = correlated != null ? correlated.packet : msg;
+
+        //-1 alive packet, -2 unregistered packet, the type was resolved once in allocateBuffer
+        int packetId = packet instanceof Initializer.AlivePacket ? -1 : type == null ? -2 : type.getId();
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Start encoding of {} with id = {}", packet.getClass().getSimpleName(), packetId);
 
         if (packetId == -2) {
-            LOGGER.error(new IllegalStateException("Unregistered packet inserted: " + msg.getClass().getSimpleName()));
+            LOGGER.error(new IllegalStateException("Unregistered packet inserted: " + packet.getClass().getSimpleName()));
             return;
         }
 
-        out.writeInt(packetId);
+        var metrics = type != null ? type.getMetrics() : null;
+        var start = metrics != null ? System.nanoTime() : 0L;
 
-        if(packetId == -1)//Alive packet
-            return;
+        var headerIndex = out.writerIndex();
 
-        try {
-            msg.write(new PacketByteBuf(out, partner.charset));
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOGGER.error(String.format("Exception while encoding packet %s(id = %d) occurred:", msg.getClass().getSimpleName(), packetId), e);
+        out.writeZero(lengthWidth);//frame length, set as soon as the packet has been written
+
+        if (partner.isCompressionEnabled())
+            partner.writeHeaderInt(out, 0);//uncompressed, the compressor replaces the frame if it's worth it
+
+        if (correlated != null) {
+            partner.writeHeaderInt(out, correlated.pseudoId());
+            PacketByteBuf.writeVarLong(out, correlated.id);
         }
 
-        LOGGER.debug(String.format("Sending packet %s(id = %d)", msg.getClass().getSimpleName(), packetId));
+        partner.writeHeaderInt(out, packetId);
+
+        var dataIndex = out.writerIndex();
+
+        if(packetId != -1) {//Alive packet has no data
+            try {
+                packet.write(buf.wrap(out));
+            } catch (Exception e) {
+                e.printStackTrace();
+                LOGGER.error("Exception while encoding packet {}(id = {}) occurred:", packet.getClass().getSimpleName(), packetId, e);
+            } finally {
+                buf.wrap(Unpooled.EMPTY_BUFFER);//don't keep the buffer reachable
+            }
+        }
+
+        var frameLength = out.writerIndex() - headerIndex - lengthWidth;
+
+        if (frameLength > partner.maxFrameSize) {
+            out.writerIndex(headerIndex);//drop the frame, the receiver would reject it anyway
+            LOGGER.error(new IllegalStateException(String.format("Packet %s(id = %d) exceeds max frame size: %d > %d", packet.getClass().getSimpleName(), packetId, frameLength, partner.maxFrameSize)));
+            return;
+        }
+
+        partner.setFrameLength(out, headerIndex, frameLength);
+
+        if (type != null)
+            type.recordSize(out.writerIndex() - dataIndex);
+
+        if (metrics != null)
+            metrics.recordEncode(out.writerIndex() - headerIndex, System.nanoTime() - start);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Sending packet {}(id = {})", packet.getClass().getSimpleName(), packetId);
     }
 }
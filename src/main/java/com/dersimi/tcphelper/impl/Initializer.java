@@ -17,9 +17,8 @@
 package com.dersimi.tcphelper.impl;
 
 import io.netty.channel.*;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -27,7 +26,6 @@ import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.concurrent.TimeUnit;
 
 public class Initializer extends ChannelInitializer {
 
@@ -43,16 +41,29 @@ public class Initializer extends ChannelInitializer {
     protected void initChannel(Channel ch) throws Exception {
         var cp = ch.pipeline();
 
-        //ssl stuff
+        if (partner instanceof Server server)//closed on shutdown
+            server.channels.add(ch);
+
+        //first handler, so it also catches the flushes of the ssl handler
+        if (partner.flushConsolidation != 0)
+            cp.addLast(new FlushConsolidationHandler(partner.flushConsolidation, true));
+
+        //ssl stuff, the context is built once per partner
         if (partner.ssl) {
-            if (partner instanceof Client client) {
-                var sslCtx = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
-
-                cp.addLast(sslCtx.newHandler(ch.alloc(), client.host, partner.port));
-            } else {//Server
-                var ssc = new SelfSignedCertificate();
-                var sslCtx = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey()).build();
-                cp.addLast(sslCtx.newHandler(ch.alloc()));
+            if (partner instanceof Client client)//peer host and port enable session resumption
+                cp.addLast(partner.sslContext.newHandler(ch.alloc(), client.host, partner.port));
+            else {//Server
+                var sslHandler = partner.sslContext.newHandler(ch.alloc());
+
+                //OpenSSL holds TLSv1.3 session tickets back until the next write, flush them so the client can resume
+                sslHandler.handshakeFuture().addListener(future -> {
+                    var engine = sslHandler.engine();
+
+                    if (future.isSuccess() && engine instanceof ReferenceCountedOpenSslEngine && "TLSv1.3".equals(engine.getSession().getProtocol()))
+                        ch.writeAndFlush(new AlivePacket());
+                });
+
+                cp.addLast(sslHandler);
             }
         }
 
@@ -77,34 +88,28 @@ public class Initializer extends ChannelInitializer {
                 cp.addLast(new ReadTimeoutHandler(partner.timeout));
         }
 
-        //client auto reconnect handler
-        if (partner instanceof Client client && client.reconnectTime != 0) {
-            cp.addLast(new SimpleChannelInboundHandler<>() {
-                @Override
-                protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
-                }
-
-                @Override
-                public void channelUnregistered(ChannelHandlerContext ctx) {
-                    ctx.channel().eventLoop().schedule(() -> {
-                        try {
-                            client.init();
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }, client.reconnectTime, TimeUnit.SECONDS);
-                }
-            });
-        }
+        //outbound frames pass the encoder first, then the compressor
+        if (partner.isCompressionEnabled())
+            cp.addLast(new Compressor(partner));
 
         cp.addLast(new Decoder(partner), new Encoder(partner));
 
+        //bounded queue of Partner.trySend, only reacts to writability changes and close
+        var sendQueue = new SendQueue(partner);
+        ch.attr(SendQueue.KEY).set(sendQueue);
+        cp.addLast(sendQueue);
+
+        //completes requests of Partner.ask with their responses, requests pass on to the channel handler
+        var rpc = new RpcHandler();
+        ch.attr(RpcHandler.KEY).set(rpc);
+        cp.addLast(rpc);
+
         if (partner.channelHandler != null) //channel handler is not always required
             cp.addLast(partner.channelHandler);
     }
 
     /**
-     * Internal AlivePacket, send by client, packetId = -1
+     * Internal AlivePacket, send by client and by the server after a TLSv1.3 handshake, packetId = -1
      */
     protected static class AlivePacket implements Packet {
         @Override
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with power of two buckets. Bucket i counts durations in [2^(i-1), 2^i) ns.
+ * Recording is an increment of two striped counters, so it's cheap even if all event loops record concurrently.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets;
+
+    private final LongAdder totalNanos;
+
+    protected LatencyHistogram() {
+        buckets = new LongAdder[BUCKETS];
+        totalNanos = new LongAdder();
+
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * @return Number of recorded durations
+     */
+    public long getCount() {
+        var count = 0L;
+
+        for (var bucket : buckets)
+            count += bucket.sum();
+
+        return count;
+    }
+
+    /**
+     * @return Mean duration in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        var count = getCount();
+
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket containing the percentile in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        var counts = getBuckets();
+        var count = 0L;
+
+        for (var c : counts)
+            count += c;
+
+        if (count == 0)
+            return 0;
+
+        var rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        var seen = 0L;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank && counts[i] != 0)
+                return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return Snapshot of the bucket counts, index i counts durations in [2^(i-1), 2^i) ns
+     */
+    public long[] getBuckets() {
+        var counts = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets[i].sum();
+
+        return counts;
+    }
+}
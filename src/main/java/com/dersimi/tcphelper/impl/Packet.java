@@ -23,15 +23,24 @@ public interface Packet {
      * Read a received packet
      *
      * @param channel Origin channel
-     * @param in      ByteBuf with data
+     * @param in      ByteBuf with data, it's reused and therefore only valid during this call
      */
     void read(Channel channel, PacketByteBuf in);
 
     /**
      * Write packet data
      *
-     * @param out Insert data into ByteBuf
+     * @param out Insert data into ByteBuf, it's reused and therefore only valid during this call
      */
     void write(PacketByteBuf out);
 
+    /**
+     * Expected number of bytes written by {@link #write(PacketByteBuf)}, used to size the outbound buffer.
+     * If unknown, the size is estimated from previously sent packets of the same type.
+     *
+     * @return Size in bytes, -1 if unknown
+     */
+    default int sizeHint() {
+        return -1;
+    }
 }
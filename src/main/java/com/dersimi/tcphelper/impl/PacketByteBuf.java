@@ -18,6 +18,8 @@ package com.dersimi.tcphelper.impl;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.util.ByteProcessor;
 
 import java.io.IOException;
@@ -29,12 +31,14 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ScatteringByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.UUID;
 
 public class PacketByteBuf extends ByteBuf {
-    private final ByteBuf byteBuf;
+    private ByteBuf byteBuf;
     private final Charset charset;
+    private final boolean compact;
 
     /**
      * PacketByteBuf constructor
@@ -43,11 +47,35 @@ public class PacketByteBuf extends ByteBuf {
      * @param charset
      */
     protected PacketByteBuf(ByteBuf byteBuf, Charset charset) {
+        this(byteBuf, charset, false);
+    }
+
+    /**
+     * PacketByteBuf constructor
+     *
+     * @param byteBuf
+     * @param charset
+     * @param compact True if string and array lengths are written as VarInt instead of int
+     */
+    protected PacketByteBuf(ByteBuf byteBuf, Charset charset, boolean compact) {
         Objects.requireNonNull(byteBuf, "byteBuf is null");
         Objects.requireNonNull(charset, "charset is null");
 
         this.byteBuf = byteBuf;
         this.charset = charset;
+        this.compact = compact;
+    }
+
+    /**
+     * Points this wrapper to another buffer, so codecs can reuse one wrapper per channel
+     *
+     * @param byteBuf The buffer to wrap
+     * @return this
+     */
+    protected PacketByteBuf wrap(ByteBuf byteBuf) {
+        this.byteBuf = Objects.requireNonNull(byteBuf, "byteBuf is null");
+
+        return this;
     }
 
     /**
@@ -56,10 +84,76 @@ public class PacketByteBuf extends ByteBuf {
      * @param str
      */
     public void writeString(String str) {
-        final byte[] bytes = str.getBytes(this.charset);
+        final boolean singleByte = StandardCharsets.US_ASCII.equals(this.charset) || StandardCharsets.ISO_8859_1.equals(this.charset);
+
+        if (this.compact && !singleByte) {
+            //the VarInt width depends on the length, so it has to be known in advance
+            if (StandardCharsets.UTF_8.equals(this.charset)) {
+                writeVarInt(this.byteBuf, ByteBufUtil.utf8Bytes(str));
+                this.byteBuf.writeCharSequence(str, this.charset);
+            } else {
+                final byte[] bytes = str.getBytes(this.charset);
+
+                writeVarInt(this.byteBuf, bytes.length);
+                this.byteBuf.writeBytes(bytes);
+            }
 
-        writeInt(bytes.length);
-        writeBytes(bytes);
+            return;
+        }
+
+        //encode straight into the buffer and fill in the length afterwards, no intermediate byte array.
+        //single byte charsets never need more bytes than chars, so the VarInt width is known in advance.
+        final int lengthIndex = this.byteBuf.writerIndex();
+        final int lengthWidth = this.compact ? varIntSize(str.length()) : Integer.BYTES;
+
+        this.byteBuf.writeZero(lengthWidth);
+
+        final int length;
+
+        if (StandardCharsets.US_ASCII.equals(this.charset))
+            length = writeSingleByte(str, 0x80);
+        else if (StandardCharsets.ISO_8859_1.equals(this.charset))
+            length = writeSingleByte(str, 0x100);
+        else
+            length = this.byteBuf.writeCharSequence(str, this.charset);
+
+        if (this.compact)
+            setVarInt(this.byteBuf, lengthIndex, length, lengthWidth);
+        else
+            this.byteBuf.setInt(lengthIndex, length);
+    }
+
+    /**
+     * Write String in a single byte charset (ASCII or Latin-1) without length into buffer, unmappable characters
+     * are replaced by '?' like {@link String#getBytes(Charset)} does.
+     * @param str
+     * @param limit first character that isn't mappable
+     * @return number of written bytes
+     */
+    private int writeSingleByte(String str, int limit) {
+        final int length = str.length();
+        this.byteBuf.ensureWritable(length);
+
+        final int start = this.byteBuf.writerIndex();
+        int index = start;
+
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+
+            if (c < limit) {
+                this.byteBuf.setByte(index++, c);
+                continue;
+            }
+
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1)))
+                i++;//surrogate pair is a single character
+
+            this.byteBuf.setByte(index++, '?');
+        }
+
+        this.byteBuf.writerIndex(index);
+
+        return index - start;
     }
 
     /**
@@ -68,10 +162,16 @@ public class PacketByteBuf extends ByteBuf {
      * @return String
      */
     public String readString() {
-        byte[] bytes = new byte[this.readInt()];
-        this.readBytes(bytes);
+        final int length = readLength();
+
+        if (length < 0 || length > this.byteBuf.readableBytes())
+            throw new IndexOutOfBoundsException("invalid string length " + length + ", readable bytes: " + this.byteBuf.readableBytes());
 
-        return new String(bytes, this.charset);
+        //decodes from the backing array or a thread local array, only the String itself is allocated
+        final String str = this.byteBuf.toString(this.byteBuf.readerIndex(), length, this.charset);
+        this.byteBuf.skipBytes(length);
+
+        return str;
     }
 
     /**
@@ -80,7 +180,13 @@ public class PacketByteBuf extends ByteBuf {
      * @return string array
      */
     public String[] readStrings() {
-        String[] array = new String[this.readInt()];
+        final int count = readLength();
+
+        //every string takes at least its length byte, so a peer can't force a huge allocation
+        if (count < 0 || count > this.byteBuf.readableBytes())
+            throw new IndexOutOfBoundsException("invalid string count " + count + ", readable bytes: " + this.byteBuf.readableBytes());
+
+        String[] array = new String[count];
 
         for (int i = 0; i < array.length; i++)
             array[i] = this.readString();
@@ -94,12 +200,192 @@ public class PacketByteBuf extends ByteBuf {
      * @param array
      */
     public void writeStrings(String[] array) {
-        this.writeInt(array.length);
+        writeLength(array.length);
 
         for (String string : array)
             this.writeString(string);
     }
 
+    /**
+     * Write length, VarInt in compact mode, int otherwise
+     * @param length
+     */
+    private void writeLength(int length) {
+        if (this.compact)
+            writeVarInt(this.byteBuf, length);
+        else
+            this.byteBuf.writeInt(length);
+    }
+
+    /**
+     * Read length, VarInt in compact mode, int otherwise
+     * @return length
+     */
+    private int readLength() {
+        return this.compact ? readVarInt(this.byteBuf) : this.byteBuf.readInt();
+    }
+
+    /**
+     * Write VarInt into buffer, 7 bits per byte, 1 to 5 bytes. Negative values always take 5 bytes,
+     * use {@link #writeZigZagVarInt(int)} for them.
+     * @param value
+     */
+    public void writeVarInt(int value) {
+        writeVarInt(this.byteBuf, value);
+    }
+
+    /**
+     * Read VarInt from buffer
+     * @return value
+     */
+    public int readVarInt() {
+        return readVarInt(this.byteBuf);
+    }
+
+    /**
+     * Write VarLong into buffer, 7 bits per byte, 1 to 10 bytes
+     * @param value
+     */
+    public void writeVarLong(long value) {
+        writeVarLong(this.byteBuf, value);
+    }
+
+    /**
+     * Read VarLong from buffer
+     * @return value
+     */
+    public long readVarLong() {
+        return readVarLong(this.byteBuf);
+    }
+
+    /**
+     * Write zig-zag encoded VarInt, small negative values take as few bytes as small positive ones
+     * @param value
+     */
+    public void writeZigZagVarInt(int value) {
+        writeVarInt(this.byteBuf, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Read zig-zag encoded VarInt
+     * @return value
+     */
+    public int readZigZagVarInt() {
+        final int value = readVarInt(this.byteBuf);
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write zig-zag encoded VarLong
+     * @param value
+     */
+    public void writeZigZagVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Read zig-zag encoded VarLong
+     * @return value
+     */
+    public long readZigZagVarLong() {
+        final long value = readVarLong();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the number of bytes of a VarInt
+     * @param value
+     * @return 1 to 5
+     */
+    public static int varIntSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+
+    /**
+     * Write VarInt into buffer
+     * @param byteBuf
+     * @param value
+     */
+    public static void writeVarInt(ByteBuf byteBuf, int value) {
+        while ((value & ~0x7F) != 0) {
+            byteBuf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        byteBuf.writeByte(value);
+    }
+
+    /**
+     * Read VarInt from buffer
+     * @param byteBuf
+     * @return value
+     */
+    public static int readVarInt(ByteBuf byteBuf) {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = byteBuf.readByte();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new CorruptedFrameException("VarInt is too long");
+    }
+
+    /**
+     * Write VarLong into buffer
+     * @param byteBuf
+     * @param value
+     */
+    public static void writeVarLong(ByteBuf byteBuf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            byteBuf.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        byteBuf.writeByte((int) value);
+    }
+
+    /**
+     * Read VarLong from buffer
+     * @param byteBuf
+     * @return value
+     */
+    public static long readVarLong(ByteBuf byteBuf) {
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte b = byteBuf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new CorruptedFrameException("VarLong is too long");
+    }
+
+    /**
+     * Set VarInt padded to a fixed width, so it can be filled in after the data behind it has been written.
+     * Padded VarInts are read like any other VarInt.
+     * @param byteBuf
+     * @param index
+     * @param value must fit into width
+     * @param width number of bytes
+     */
+    public static void setVarInt(ByteBuf byteBuf, int index, int value, int width) {
+        for (int i = 0; i < width - 1; i++) {
+            byteBuf.setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        byteBuf.setByte(index + width - 1, value & 0x7F);
+    }
+
     /**
      * Read unique id from buffer
      * @author DerSimi
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per packet type counters: sent/received packets and bytes, encode/decode time.
+ * Sent bytes are counted before compression, received bytes as they arrived. Both include the frame header.
+ */
+public final class PacketMetrics implements PacketMetricsMXBean {
+    private final PacketType type;
+
+    private final LongAdder sentCount, sentBytes, receivedCount, receivedBytes;
+
+    private final LatencyHistogram encodeTime, decodeTime;
+
+    protected PacketMetrics(PacketType type) {
+        this.type = type;
+        this.sentCount = new LongAdder();
+        this.sentBytes = new LongAdder();
+        this.receivedCount = new LongAdder();
+        this.receivedBytes = new LongAdder();
+        this.encodeTime = new LatencyHistogram();
+        this.decodeTime = new LatencyHistogram();
+    }
+
+    /**
+     * Record an encoded packet
+     *
+     * @param bytes Frame size
+     * @param nanos Encode time
+     */
+    public void recordEncode(int bytes, long nanos) {
+        sentCount.increment();
+        sentBytes.add(bytes);
+        encodeTime.record(nanos);
+    }
+
+    /**
+     * Record a decoded packet
+     *
+     * @param bytes Frame size
+     * @param nanos Decode time
+     */
+    public void recordDecode(int bytes, long nanos) {
+        receivedCount.increment();
+        receivedBytes.add(bytes);
+        decodeTime.record(nanos);
+    }
+
+    public LatencyHistogram getEncodeTime() {
+        return encodeTime;
+    }
+
+    public LatencyHistogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    @Override
+    public int getPacketId() {
+        return type.getId();
+    }
+
+    @Override
+    public String getPacketName() {
+        return type.getType().getSimpleName();
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    @Override
+    public double getEncodeTimeMean() {
+        return encodeTime.getMean();
+    }
+
+    @Override
+    public long getEncodeTimeP50() {
+        return encodeTime.getPercentile(50);
+    }
+
+    @Override
+    public long getEncodeTimeP99() {
+        return encodeTime.getPercentile(99);
+    }
+
+    @Override
+    public double getDecodeTimeMean() {
+        return decodeTime.getMean();
+    }
+
+    @Override
+    public long getDecodeTimeP50() {
+        return decodeTime.getPercentile(50);
+    }
+
+    @Override
+    public long getDecodeTimeP99() {
+        return decodeTime.getPercentile(99);
+    }
+}
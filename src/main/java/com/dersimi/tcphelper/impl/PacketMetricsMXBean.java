@@ -0,0 +1,46 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+/**
+ * JMX view of {@link PacketMetrics}, times are in nanoseconds
+ */
+public interface PacketMetricsMXBean {
+    int getPacketId();
+
+    String getPacketName();
+
+    long getSentCount();
+
+    long getSentBytes();
+
+    long getReceivedCount();
+
+    long getReceivedBytes();
+
+    double getEncodeTimeMean();
+
+    long getEncodeTimeP50();
+
+    long getEncodeTimeP99();
+
+    double getDecodeTimeMean();
+
+    long getDecodeTimeP50();
+
+    long getDecodeTimeP99();
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Read-only packet registry, built once before the first channel is opened.
+ * Ids below {@link #DENSE_LIMIT} are resolved by an array load, larger ids fall back to a primitive hash map.
+ * All fields are final and never modified after construction, so the registry can be read by any event loop
+ * without synchronization.
+ */
+public final class PacketRegistry {
+    /**
+     * Ids below this limit are stored in the dense array
+     */
+    public static final int DENSE_LIMIT = 1024;
+
+    private final PacketType[] dense;
+
+    private final IntObjectMap<PacketType> sparse;
+
+    private final Map<Class<? extends Packet>, PacketType> byClass;
+
+    private final IntObjectMap<byte[]> dictionaries;//by dictionary id
+
+    PacketRegistry(Collection<PacketType> types) {
+        var maxDenseId = -1;
+
+        for (var type : types)
+            if (type.getId() < DENSE_LIMIT)
+                maxDenseId = Math.max(maxDenseId, type.getId());
+
+        dense = new PacketType[maxDenseId + 1];
+        sparse = new IntObjectHashMap<>();
+        byClass = new IdentityHashMap<>();//classes are unique per class loader, no need for equals
+        dictionaries = new IntObjectHashMap<>();
+
+        for (var type : types) {
+            if (type.getId() < DENSE_LIMIT)
+                dense[type.getId()] = type;
+            else
+                sparse.put(type.getId(), type);
+
+            byClass.put(type.getType(), type);
+
+            if (type.getDictionary() != null) {
+                var existing = dictionaries.put(type.getDictionaryId(), type.getDictionary());
+
+                if (existing != null && !Arrays.equals(existing, type.getDictionary()))
+                    throw new IllegalStateException("dictionary of packet " + type.getId() + " has the same checksum as another dictionary");
+            }
+        }
+    }
+
+    /**
+     * Returns packet type by id
+     *
+     * @param id Packet id
+     * @return The packet type or null if the id is unknown
+     */
+    public PacketType get(int id) {
+        if (id >= 0 && id < dense.length)
+            return dense[id];
+
+        return sparse.isEmpty() ? null : sparse.get(id);
+    }
+
+    /**
+     * Returns packet type by class
+     *
+     * @param type Packet class
+     * @return The packet type or null if the class isn't registered
+     */
+    public PacketType get(Class<? extends Packet> type) {
+        return byClass.get(type);
+    }
+
+    /**
+     * Returns a compression dictionary by its Adler-32 checksum
+     *
+     * @param dictionaryId Checksum requested by the inflater
+     * @return The dictionary or null if there is none with this checksum
+     */
+    public byte[] getDictionary(int dictionaryId) {
+        return dictionaries.isEmpty() ? null : dictionaries.get(dictionaryId);
+    }
+
+    /**
+     * @return Number of registered packets
+     */
+    public int size() {
+        return byClass.size();
+    }
+}
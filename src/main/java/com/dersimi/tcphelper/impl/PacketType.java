@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.util.Recycler;
+
+import java.util.function.Supplier;
+import java.util.zip.Adler32;
+
+/**
+ * A registered packet: id, class and the factory used on receipt
+ */
+public final class PacketType {
+    private final int id;
+
+    private final Class<? extends Packet> type;
+
+    private final Supplier<? extends Packet> factory;
+
+    private final Recycler<PooledPacket> pool;//only for pooled packets
+
+    private byte[] dictionary;//preset compression dictionary, may be null
+
+    private int dictionaryId;//Adler-32 of the dictionary, like zlib's DICTID
+
+    private PacketMetrics metrics;//null if metrics are disabled
+
+    /**
+     * Initial size estimate in bytes, same as netty's default buffer capacity
+     */
+    public static final int INITIAL_SIZE_ESTIMATE = 256;
+
+    //written by all event loops without synchronization, a lost or stale update only costs one buffer expansion
+    private int sizeEstimate;
+
+    protected PacketType(int id, Class<? extends Packet> type, Supplier<? extends Packet> factory) {
+        this.id = id;
+        this.type = type;
+        this.factory = factory;
+        this.sizeEstimate = INITIAL_SIZE_ESTIMATE;
+        this.pool = PooledPacket.class.isAssignableFrom(type) ? PooledPacket.newPool(this) : null;
+    }
+
+    /**
+     * Creates a new instance of this packet, pooled packets are taken from the pool
+     *
+     * @return The new packet
+     */
+    public Packet create() {
+        return pool != null ? pool.get().acquire() : factory.get();
+    }
+
+    /**
+     * Creates a new instance of this packet, bypassing the pool
+     *
+     * @return The new packet
+     */
+    Packet newInstance() {
+        return factory.get();
+    }
+
+    /**
+     * @return True if packets of this type are pooled
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Returns the expected encoded size of this packet type
+     *
+     * @return Size in bytes
+     */
+    public int estimateSize() {
+        return sizeEstimate;
+    }
+
+    /**
+     * Records the size of an encoded packet. The estimate follows larger packets immediately and
+     * decays by 1/8 of the difference towards smaller ones, so it only shrinks if packets keep being smaller.
+     *
+     * @param size Encoded size in bytes
+     */
+    public void recordSize(int size) {
+        var estimate = sizeEstimate;
+
+        if (size >= estimate)
+            sizeEstimate = size;
+        else
+            sizeEstimate = estimate - ((estimate - size) >>> 3);
+    }
+
+    /**
+     * Set the preset compression dictionary, only before the registry is frozen
+     *
+     * @param dictionary The dictionary
+     */
+    void setDictionary(byte[] dictionary) {
+        var adler = new Adler32();
+        adler.update(dictionary);
+
+        this.dictionary = dictionary;
+        this.dictionaryId = (int) adler.getValue();
+    }
+
+    /**
+     * @return Preset compression dictionary, null if there is none
+     */
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return Adler-32 checksum of the dictionary, as announced in compressed frames
+     */
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * Enable metrics for this packet type, only before the registry is frozen
+     */
+    void enableMetrics() {
+        if (metrics == null)
+            metrics = new PacketMetrics(this);
+    }
+
+    /**
+     * @return Metrics of this packet type, null if metrics are disabled
+     */
+    public PacketMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Class<? extends Packet> getType() {
+        return type;
+    }
+}
@@ -16,51 +16,143 @@
 
 package com.dersimi.tcphelper.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLException;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 public abstract class Partner {
-    private final Map<Integer, Packet> packets;
+    /**
+     * Default upper bound of a single frame (packet id + packet data) in bytes
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1 << 20;
+
+    /**
+     * Default number of packets {@link #trySend(Channel, Packet)} queues per channel while it isn't writable
+     */
+    public static final int DEFAULT_SEND_QUEUE_LIMIT = 1024;
+
+    /**
+     * Default time {@link #ask(Channel, Packet)} waits for a response
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Enabled ssl protocols, TLSv1.3 resumes through session tickets, TLSv1.2 through cached sessions or tickets
+     */
+    private static final String[] SSL_PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+
+    private final Map<Integer, PacketType> registrations;
+
+    private PacketRegistry packets;//immutable, safely published through its final fields
 
     protected final ChannelHandler channelHandler;
 
-    protected final boolean epoll, ssl;
+    protected final boolean ssl;
+
+    protected Transport transport;
+
+    protected TransportRuntime runtime;//shared groups, null if the partner creates its own
 
     protected final int port, timeout;
 
     protected final Charset charset;
 
+    protected int maxFrameSize, flushConsolidation, compressionThreshold, sendQueueLimit;
+
+    protected WritabilityHandler writabilityHandler;
+
+    protected Duration requestTimeout;
+
+    protected boolean compact, dictionaries, metrics;
+
+    private final List<ObjectName> metricsMBeans;
+
+    protected SslContext sslContext;
+
+    protected final Map<ChannelOption<?>, Object> options;
+
+    protected ChannelProfile profile;
+
+    protected volatile CompletableFuture<Void> closeFuture;//completed once shut down, replaced on start
+
+    private SslProvider sslProvider;
+
+    private long sslSessionCacheSize, sslSessionTimeout;
+
     protected Partner(int port, ChannelHandler channelHandler, boolean epoll, boolean ssl, Charset charset, int timeout) {
         if (epoll && !Epoll.isAvailable())
             throw new UnsupportedOperationException("epoll isn't available");
 
-        packets = new HashMap<>();
+        registrations = new HashMap<>();
+        metricsMBeans = new ArrayList<>();
+        options = new LinkedHashMap<>();
         this.channelHandler = channelHandler;
         this.port = port;
-        this.epoll = epoll;
+        this.transport = epoll ? Transport.EPOLL : Transport.NIO;
         this.ssl = ssl;
         this.charset = charset == null ? StandardCharsets.US_ASCII : charset;
         this.timeout = timeout;
+        this.maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        this.compressionThreshold = -1;
+        this.sendQueueLimit = DEFAULT_SEND_QUEUE_LIMIT;
+        this.requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+        this.closeFuture = CompletableFuture.completedFuture(null);
     }
 
     /**
-     * Init client/server
+     * Init client/server, blocks until it's closed
      *
      */
     protected void init() throws InterruptedException {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Start client/server without blocking
+     *
+     * @return Future completed once bound/connected
+     */
+    protected CompletableFuture<?> start() {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Terminate client/server
      */
@@ -68,6 +160,73 @@ public abstract class Partner {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Terminate client/server on another thread and wait for it, must not be called on an event loop
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of timeout
+     * @return True if it was shut down within the timeout
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        var close = closeFuture;
+
+        CompletableFuture.runAsync(this::shutdown);
+
+        try {
+            close.get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Future completed once the client/server is shut down, already completed if it isn't running
+     */
+    public CompletableFuture<Void> closeFuture() {
+        return closeFuture.copy();//callers can't complete the internal future
+    }
+
+    /**
+     * Adapts a netty future, the returned future completes on the event loop
+     *
+     * @param future Bind, connect or close future
+     * @return Future completed with the channel
+     */
+    protected static CompletableFuture<Channel> completable(ChannelFuture future) {
+        var completable = new CompletableFuture<Channel>();
+
+        future.addListener(f -> {
+            if (f.isSuccess())
+                completable.complete(future.channel());
+            else
+                completable.completeExceptionally(f.cause());
+        });
+
+        return completable;
+    }
+
+    /**
+     * Wait for a future and rethrow its original cause like {@link ChannelFuture#sync()} does
+     *
+     * @param future The future
+     * @param <T>    Result type
+     * @return The result
+     */
+    protected static <T> T await(CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+
+            while (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+
+            PlatformDependent.throwException(cause);
+            return null;
+        }
+    }
+
     /**
      * Creates needed event loop group
      *
@@ -76,59 +235,610 @@ public abstract class Partner {
      */
     protected EventLoopGroup createGroup(int threads) {
         var factory = new DefaultThreadFactory("Network");
-        return epoll ? new EpollEventLoopGroup(threads, factory) : new NioEventLoopGroup(threads, factory);
+        return transport.newGroup(threads, factory);
     }
 
     /**
-     * Register a packet
+     * Set the network transport, falls back to epoll and then nio if it isn't available, see {@link Transport#resolve()}
+     *
+     * @param transport The transport
+     */
+    public void setTransport(Transport transport) {
+        this.transport = Objects.requireNonNull(transport, "transport is null").resolve();
+    }
+
+    /**
+     * Use the event loop groups and the allocator of a shared runtime instead of creating own groups.
+     * The runtime is retained while the client/server is running, its transport replaces the transport set here.
+     *
+     * @param runtime The runtime, null to create own groups
+     */
+    public void setRuntime(TransportRuntime runtime) {
+        this.runtime = runtime;
+
+        if (runtime != null)
+            this.transport = runtime.getTransport();
+    }
+
+    /**
+     * @return The transport in use, after fallback
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set a channel option, applied on init. The client applies it to its connection, the server to its listening
+     * channels, see {@link Server#setChildOption(ChannelOption, Object)} for accepted connections.
+     *
+     * @param option The option, e.g. {@link ChannelOption#SO_SNDBUF}
+     * @param value  The value, null to remove the option
+     * @param <T>    Option type
+     */
+    public <T> void setOption(ChannelOption<T> option, T value) {
+        setOption(options, option, value);
+    }
+
+    /**
+     * Set a profile of connection options, options set explicitly take precedence
+     *
+     * @param profile The profile, null for netty's defaults
+     */
+    public void setProfile(ChannelProfile profile) {
+        this.profile = profile;
+    }
+
+    protected static <T> void setOption(Map<ChannelOption<?>, Object> options, ChannelOption<T> option, T value) {
+        Objects.requireNonNull(option, "option is null");
+
+        if (value == null)
+            options.remove(option);
+        else
+            options.put(option, value);
+    }
+
+    /**
+     * Merges the profile and the runtime's allocator with explicitly set connection options
+     *
+     * @param options Explicit options
+     * @return Profile options and allocator, overridden by the explicit ones
+     */
+    protected Map<ChannelOption<?>, Object> connectionOptions(Map<ChannelOption<?>, Object> options) {
+        var merged = new LinkedHashMap<ChannelOption<?>, Object>();
+
+        if (profile != null)
+            merged.putAll(profile.getOptions());
+
+        if (runtime != null)
+            merged.put(ChannelOption.ALLOCATOR, runtime.getAllocator());
+
+        merged.putAll(options);
+
+        return merged;
+    }
+
+    /**
+     * Set the maximum frame size, frames exceeding it are neither sent nor accepted.
+     *
+     * @param maxFrameSize Maximum frame size in bytes, must be greater than 4
+     * @throws IllegalStateException If maxFrameSize is invalid
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize <= Integer.BYTES)
+            throw new IllegalStateException("maxFrameSize is invalid");
+
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Use the compact wire format: frame length, packet id and string/array lengths are written as VarInt.
+     * Both sides have to use the same format.
+     *
+     * @param compact True for compact wire format
+     */
+    public void setCompactWireFormat(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Compress frames whose packet data is at least threshold bytes long. Compressed frames are marked by their
+     * uncompressed size in the frame header. Both sides have to enable compression, the thresholds may differ.
+     *
+     * @param threshold Min size in bytes, -1 to disable compression
+     */
+    public void setCompressionThreshold(int threshold) {
+        if (threshold < -1)
+            throw new IllegalStateException("threshold is invalid");
+
+        this.compressionThreshold = threshold;
+    }
+
+    /**
+     * @return True if frames carry a compression marker
+     */
+    protected boolean isCompressionEnabled() {
+        return compressionThreshold != -1 || dictionaries;
+    }
+
+    /**
+     * Register a preset compression dictionary for a packet, see {@link DictionaryTrainer}.
+     * Frames of this packet are compressed with the dictionary regardless of the compression threshold,
+     * as long as that makes them smaller. Both sides need the same dictionary, the receiver finds it by its
+     * Adler-32 checksum and rejects frames with unknown checksums.
+     *
+     * @param id         Packet id, the packet has to be registered already
+     * @param dictionary The dictionary, at most the last 32 KiB are used by deflate
+     * @throws IllegalStateException If the packet isn't registered
+     */
+    public void registerDictionary(int id, byte[] dictionary) {
+        Objects.requireNonNull(dictionary, "dictionary is null");
+
+        if (packets != null)
+            throw new IllegalStateException("packets are frozen, register dictionaries before init");
+
+        var type = registrations.get(id);
+
+        if (type == null)
+            throw new IllegalStateException("there is no packet with id " + id);
+
+        type.setDictionary(dictionary.clone());
+        dictionaries = true;
+    }
+
+    /**
+     * Collect per packet metrics: sent/received packets and bytes, encode/decode time histograms.
+     * Recording costs a few striped counter increments and two System.nanoTime() calls per packet.
+     *
+     * @param metrics True to collect metrics
+     * @throws IllegalStateException If packets are frozen already
+     */
+    public void setMetricsEnabled(boolean metrics) {
+        if (packets != null)
+            throw new IllegalStateException("packets are frozen, enable metrics before init");
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics of a packet
+     *
+     * @param id Packet id
+     * @return Metrics or null if metrics are disabled or there is no packet with this id
+     */
+    public PacketMetrics getMetrics(int id) {
+        var type = getPackets().get(id);
+
+        return type == null ? null : type.getMetrics();
+    }
+
+    /**
+     * Returns the metrics of all packets
+     *
+     * @return Metrics by packet id, empty if metrics are disabled
+     */
+    public Map<Integer, PacketMetrics> getMetrics() {
+        getPackets();//metrics are created on freeze
+
+        var result = new HashMap<Integer, PacketMetrics>();
+
+        for (var type : registrations.values())
+            if (type.getMetrics() != null)
+                result.put(type.getId(), type.getMetrics());
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Registers the packet metrics at the platform MBean server as
+     * com.dersimi.tcphelper:type=PacketMetrics,partner=name,packet=id
+     *
+     * @param name Name of this client/server, has to be unique within the JVM
+     * @throws IllegalStateException If metrics are disabled or registration fails
+     */
+    public void registerMetricsMBeans(String name) {
+        Objects.requireNonNull(name, "name is null");
+
+        if (!metrics)
+            throw new IllegalStateException("metrics are disabled");
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            for (var entry : getMetrics().entrySet()) {
+                var objectName = new ObjectName("com.dersimi.tcphelper:type=PacketMetrics,partner=" + ObjectName.quote(name) + ",packet=" + entry.getKey());
+
+                server.registerMBean(entry.getValue(), objectName);
+                metricsMBeans.add(objectName);
+            }
+        } catch (JMException e) {
+            unregisterMetricsMBeans();
+            throw new IllegalStateException("could not register metrics", e);
+        }
+    }
+
+    /**
+     * Removes the MBeans registered by {@link #registerMetricsMBeans(String)}
+     */
+    public void unregisterMetricsMBeans() {
+        var server = ManagementFactory.getPlatformMBeanServer();
+
+        for (var objectName : metricsMBeans) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+        }
+
+        metricsMBeans.clear();
+    }
+
+    /**
+     * @return Number of bytes of the frame length, a padded VarInt in compact mode
+     */
+    protected int getFrameLengthWidth() {
+        return compact ? PacketByteBuf.varIntSize(maxFrameSize) : Integer.BYTES;
+    }
+
+    /**
+     * Fills in the frame length reserved in front of a frame
+     *
+     * @param buf    The buffer
+     * @param index  Index of the frame length
+     * @param length Frame length without the length itself
+     */
+    protected void setFrameLength(ByteBuf buf, int index, int length) {
+        if (compact)
+            PacketByteBuf.setVarInt(buf, index, length, getFrameLengthWidth());
+        else
+            buf.setInt(index, length);
+    }
+
+    /**
+     * Writes a frame header field (packet id, uncompressed size), VarInt in compact mode, int otherwise
+     *
+     * @param buf   The buffer
+     * @param value The value
+     */
+    protected void writeHeaderInt(ByteBuf buf, int value) {
+        if (compact)
+            PacketByteBuf.writeVarInt(buf, value);
+        else
+            buf.writeInt(value);
+    }
+
+    /**
+     * Reads a frame header field, VarInt in compact mode, int otherwise
+     *
+     * @param buf The buffer
+     * @return The value
+     */
+    protected int readHeaderInt(ByteBuf buf) {
+        return compact ? PacketByteBuf.readVarInt(buf) : buf.readInt();
+    }
+
+    /**
+     * Consolidate flushes, so many small packets written with writeAndFlush leave in one syscall.
+     * See {@link FlushConsolidationHandler}.
+     *
+     * @param explicitFlushAfterFlushes Flush at the latest after this many flushes, 0 to disable
+     */
+    public void setFlushConsolidation(int explicitFlushAfterFlushes) {
+        if (explicitFlushAfterFlushes < 0)
+            throw new IllegalStateException("explicitFlushAfterFlushes is invalid");
+
+        this.flushConsolidation = explicitFlushAfterFlushes;
+    }
+
+    /**
+     * Set the ssl provider, by default OpenSSL is used if netty-tcnative is available, otherwise the JDK provider
+     *
+     * @param sslProvider The provider, null for default
+     * @throws UnsupportedOperationException If OpenSSL is requested but isn't available
+     */
+    public void setSslProvider(SslProvider sslProvider) {
+        if (sslProvider != null && sslProvider != SslProvider.JDK && !OpenSsl.isAvailable())
+            throw new UnsupportedOperationException("OpenSSL isn't available", OpenSsl.unavailabilityCause());
+
+        this.sslProvider = sslProvider;
+    }
+
+    /**
+     * Configure the ssl session cache, cached sessions allow reconnecting clients to resume instead of
+     * doing a full handshake.
+     *
+     * @param sessionCacheSize Max number of cached sessions, 0 for provider default
+     * @param sessionTimeout   Session timeout in seconds, 0 for provider default
+     */
+    public void setSslSessionCache(long sessionCacheSize, long sessionTimeout) {
+        if (sessionCacheSize < 0 || sessionTimeout < 0)
+            throw new IllegalStateException("session cache settings are invalid");
+
+        this.sslSessionCacheSize = sessionCacheSize;
+        this.sslSessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Use an already built ssl context instead of the one created on init, only used if ssl is active
+     *
+     * @param sslContext The ssl context, must be a server context for servers and a client context for clients
+     */
+    public void setSslContext(SslContext sslContext) {
+        Objects.requireNonNull(sslContext, "sslContext is null");
+
+        if (sslContext.isServer() == this instanceof Client)
+            throw new IllegalStateException("sslContext doesn't match partner type");
+
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Creates the ssl context, called once per partner.
+     *
+     * @return The ssl context
+     */
+    protected SslContext createSslContext() throws SSLException, CertificateException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Builds the ssl context if ssl is active and no context exists yet, all channels of this partner share it.
+     *
+     * @throws IllegalStateException If the context can't be created
+     */
+    protected void initSsl() {
+        if (!ssl || sslContext != null)
+            return;
+
+        try {
+            sslContext = createSslContext();
+        } catch (SSLException | CertificateException e) {
+            throw new IllegalStateException("could not create ssl context", e);
+        }
+    }
+
+    /**
+     * Applies provider, protocol and session cache settings
+     *
+     * @param builder Client or server builder
+     * @return The builder
+     */
+    protected SslContextBuilder configureSsl(SslContextBuilder builder) {
+        var provider = sslProvider != null ? sslProvider : OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+
+        return builder.sslProvider(provider).protocols(SSL_PROTOCOLS).sessionCacheSize(sslSessionCacheSize).sessionTimeout(sslSessionTimeout);
+    }
+
+    /**
+     * Register a packet, the packet is instantiated through its no-args constructor on receipt.
      *
      * @param id     Packet id, must be greater than 0
-     * @param packet Packet
+     * @param packet Packet prototype, only its class is used
      * @throws IllegalStateException If id is in valid
      */
     public void registerPacket(int id, Packet packet) {
+        Objects.requireNonNull(packet, "packet is null");
+
+        registerPacket(id, packet.getClass(), constructorOf(packet.getClass()));
+    }
+
+    /**
+     * Register a packet
+     *
+     * @param id      Packet id, must be greater than 0
+     * @param factory Creates a new packet on receipt, it's called once on registration to determine the packet class
+     * @throws IllegalStateException If id is in valid
+     */
+    public void registerPacket(int id, Supplier<? extends Packet> factory) {
+        Objects.requireNonNull(factory, "factory is null");
+
+        var packet = Objects.requireNonNull(factory.get(), "factory returned null");
+
+        registerPacket(id, packet.getClass(), factory);
+    }
+
+    private void registerPacket(int id, Class<? extends Packet> type, Supplier<? extends Packet> factory) {
+        if (packets != null)
+            throw new IllegalStateException("packets are frozen, register them before init");
+
         if (id < 0)
             throw new IllegalStateException("id is invalid");
 
+        if (registrations.containsKey(id))
+            throw new IllegalStateException("packet with id " + id + " already exists");
+
+        for (var registration : registrations.values())
+            if (registration.getType() == type)
+                throw new IllegalStateException("packet " + type.getSimpleName() + " is already registered with id " + registration.getId());
+
+        registrations.put(id, new PacketType(id, type, factory));
+    }
+
+    /**
+     * Compiles the registered packets into the read-only registry used by the event loops.
+     * Called by the factories and on init, further registrations are rejected afterwards.
+     */
+    public void freezePackets() {
+        if (packets != null)
+            return;
+
+        if (metrics)
+            for (var type : registrations.values())
+                type.enableMetrics();
+
+        packets = new PacketRegistry(registrations.values());
+    }
+
+    /**
+     * Returns the frozen packet registry
+     *
+     * @return The registry
+     * @throws IllegalStateException If packets aren't frozen yet
+     */
+    protected PacketRegistry getPackets() {
+        if (packets == null)
+            throw new IllegalStateException("packets aren't frozen yet");
+
+        return packets;
+    }
+
+    /**
+     * Resolves the no-args constructor once, so creating a packet doesn't need reflection.
+     *
+     * @param type Packet class
+     * @return Factory invoking the constructor, fails on use if there is no accessible no-args constructor
+     */
+    private static Supplier<Packet> constructorOf(Class<? extends Packet> type) {
+        MethodHandle constructor;
+
+        try {
+            var c = type.getDeclaredConstructor();
+
+            try {
+                c.setAccessible(true);//nested or package private packets
+            } catch (RuntimeException ignored) {
+            }
+
+            constructor = MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Packet.class));
+        } catch (ReflectiveOperationException e) {
+            //packets that are only sent don't need a constructor, so fail only if it's actually used
+            return () -> {
+                throw new IllegalStateException("packet " + type.getSimpleName() + " has no accessible no-args constructor", e);
+            };
+        }
+
+        return () -> {
+            try {
+                return (Packet) constructor.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException("could not create packet " + type.getSimpleName(), t);
+            }
+        };
+    }
+
+    /**
+     * Writes all packets and flushes once, so they are sent together instead of one syscall per packet.
+     *
+     * @param channel The channel
+     * @param packets Packets in sending order
+     * @return Future of the last packet, failures of earlier packets are passed to exceptionCaught
+     */
+    public ChannelFuture send(Channel channel, Collection<? extends Packet> packets) {
+        Objects.requireNonNull(channel, "channel is null");
+
+        var remaining = packets.size();
+
+        if (remaining == 0)
+            return channel.newSucceededFuture();
+
+        ChannelFuture future = null;
+
+        for (var packet : packets)
+            future = --remaining == 0 ? channel.write(packet) : channel.write(packet, channel.voidPromise());
+
+        channel.flush();
+
+        return future;
+    }
+
+    /**
+     * Sends a packet respecting the write buffer watermarks: it's written if the channel is writable, queued
+     * if it isn't and rejected if the queue is full. Queued packets are written in order as soon as the channel is
+     * writable again, then the {@link WritabilityHandler} is called. Producers should slow down on QUEUED and
+     * stop on REJECTED, instead of letting the outbound buffer grow without limit.
+     *
+     * @param channel Channel of this client/server
+     * @param packet  The packet, rejected packets are not released
+     * @return ACCEPTED, QUEUED or REJECTED
+     */
+    public SendResult trySend(Channel channel, Packet packet) {
+        Objects.requireNonNull(channel, "channel is null");
         Objects.requireNonNull(packet, "packet is null");
 
-        if (packets.containsKey(id))
-            throw new IllegalStateException("packet with id " + id + " already exists");
+        var queue = channel.attr(SendQueue.KEY).get();
 
-        packets.put(id, packet);
+        if (queue == null)
+            throw new IllegalStateException("channel doesn't belong to a client/server");
+
+        return queue.offer(channel, packet);
     }
 
     /**
-     * Returns the id of a given packet.
+     * Set the max number of packets queued per channel by {@link #trySend(Channel, Packet)}
      *
-     * @param packet The packet
-     * @return Packet id, in case of unknown packet, 1 will be returned
+     * @param limit Max queued packets, 0 to reject instead of queueing
+     * @throws IllegalStateException If limit is invalid
      */
-    protected int getIdByPacket(Packet packet) {
-        Objects.requireNonNull(packet, "packet can not be null");
+    public void setSendQueueLimit(int limit) {
+        if (limit < 0)
+            throw new IllegalStateException("limit is invalid");
 
-        if (packet instanceof Initializer.AlivePacket)
-            return -1;
+        this.sendQueueLimit = limit;
+    }
 
-        for (Map.Entry<Integer, Packet> entry : packets.entrySet())
-            if (entry.getValue().getClass().equals(packet.getClass()))
-                return entry.getKey();
+    /**
+     * Set the handler called when a channel is writable again and its send queue has been drained
+     *
+     * @param writabilityHandler may be null
+     */
+    public void setWritabilityHandler(WritabilityHandler writabilityHandler) {
+        this.writabilityHandler = writabilityHandler;
+    }
 
-        return -2;
+    /**
+     * Send a request, the other side receives a {@link Request} and answers it with {@link Request#reply(Packet)}.
+     * Uses the request timeout, see {@link #setRequestTimeout(Duration)}.
+     *
+     * @param channel The channel
+     * @param packet  Request packet
+     * @return Future of the response packet, completed on the channel's event loop
+     */
+    public CompletableFuture<Packet> ask(Channel channel, Packet packet) {
+        return ask(channel, packet, requestTimeout);
     }
 
     /**
-     * Returns packet by id
+     * Send a request, the other side receives a {@link Request} and answers it with {@link Request#reply(Packet)}
      *
-     * @param id the packet id
-     * @return The packet
+     * @param channel The channel
+     * @param packet  Request packet
+     * @param timeout Time to wait for the response, zero to wait until the channel is closed
+     * @return Future of the response packet, completed on the channel's event loop. Fails with a
+     * {@link java.util.concurrent.TimeoutException} or {@link java.nio.channels.ClosedChannelException}.
+     * @throws IllegalStateException If the channel doesn't belong to a client/server
      */
-    protected Packet getPacketById(int id) {
-        var packet = packets.get(id);
+    public CompletableFuture<Packet> ask(Channel channel, Packet packet, Duration timeout) {
+        Objects.requireNonNull(channel, "channel is null");
+        Objects.requireNonNull(packet, "packet is null");
+        Objects.requireNonNull(timeout, "timeout is null");
 
-        if (packet == null)
-            throw new IllegalStateException("there is no packet with id " + id);
+        var rpc = channel.attr(RpcHandler.KEY).get();
+
+        if (rpc == null)
+            throw new IllegalStateException("channel doesn't belong to a client/server");
+
+        return rpc.ask(channel, packet, timeout.toNanos());
+    }
+
+    /**
+     * Set the time {@link #ask(Channel, Packet)} waits for a response
+     *
+     * @param timeout The timeout, zero to wait until the channel is closed
+     * @throws IllegalStateException If timeout is invalid
+     */
+    public void setRequestTimeout(Duration timeout) {
+        if (Objects.requireNonNull(timeout, "timeout is null").isNegative())
+            throw new IllegalStateException("timeout is invalid");
+
+        this.requestTimeout = timeout;
+    }
 
-        return packet;
+    @FunctionalInterface
+    public interface WritabilityHandler {
+        /**
+         * Called on the channel's event loop when the channel is writable again and all queued packets are written
+         *
+         * @param channel The channel
+         */
+        void writable(Channel channel);
     }
 }
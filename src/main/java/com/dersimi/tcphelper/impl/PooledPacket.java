@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import io.netty.util.ResourceLeakTracker;
+
+/**
+ * Opt-in pooled packet. Received packets of a class extending PooledPacket are taken from a per-type pool
+ * instead of being created for every message, and go back to the pool once they are released.
+ * <p>
+ * Like a ByteBuf, the packet is reference counted: {@link io.netty.channel.SimpleChannelInboundHandler} releases
+ * it after channelRead0, other handlers have to call {@link #release()} when they are done with it. Writing a
+ * packet to a channel releases it after encoding, so retain it before writing it to several channels or
+ * echoing a received packet from a SimpleChannelInboundHandler.
+ * <p>
+ * Leaks are reported by netty's leak detector, set -Dio.netty.leakDetection.level=paranoid while debugging to
+ * track every packet.
+ */
+public abstract class PooledPacket extends AbstractReferenceCounted implements Packet {
+    private static final ResourceLeakDetector<PooledPacket> LEAK_DETECTOR = ResourceLeakDetectorFactory.instance().newResourceLeakDetector(PooledPacket.class);
+
+    private Recycler.Handle<PooledPacket> handle;//null if the packet wasn't created by a pool
+
+    private ResourceLeakTracker<PooledPacket> leak;
+
+    /**
+     * Clear all fields before the packet goes back to the pool
+     */
+    protected abstract void reset();
+
+    /**
+     * Creates the pool of a packet type
+     *
+     * @param type Packet type, its factory has to create PooledPackets
+     * @return The pool
+     */
+    static Recycler<PooledPacket> newPool(PacketType type) {
+        return new Recycler<>() {
+            @Override
+            protected PooledPacket newObject(Handle<PooledPacket> handle) {
+                var packet = (PooledPacket) type.newInstance();
+                packet.handle = handle;
+
+                return packet;
+            }
+        };
+    }
+
+    /**
+     * Called when the packet is taken from the pool
+     *
+     * @return this
+     */
+    PooledPacket acquire() {
+        setRefCnt(1);
+        leak = LEAK_DETECTOR.track(this);
+
+        return this;
+    }
+
+    @Override
+    public PooledPacket touch(Object hint) {
+        if (leak != null)
+            leak.record(hint);
+
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        reset();
+
+        if (leak != null) {
+            leak.close(this);
+            leak = null;
+        }
+
+        if (handle != null)
+            handle.recycle(this);
+    }
+}
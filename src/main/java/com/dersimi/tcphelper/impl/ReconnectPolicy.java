@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays of the client's auto reconnection, exponential backoff with full jitter, so clients of a restarted
+ * server don't reconnect in lockstep
+ */
+public final class ReconnectPolicy {
+    private final long baseDelay, maxDelay;//nanoseconds
+
+    private final int maxAttempts;
+
+    private final boolean jitter;
+
+    /**
+     * @param baseDelay   Delay cap of the first attempt, doubled with every failed attempt
+     * @param maxDelay    Upper bound of the delay cap
+     * @param maxAttempts Attempts without an established connection until the client gives up and shuts down, 0 for
+     *                    unlimited
+     * @throws IllegalStateException If a delay or maxAttempts is invalid
+     */
+    public ReconnectPolicy(Duration baseDelay, Duration maxDelay, int maxAttempts) {
+        this(baseDelay, maxDelay, maxAttempts, true);
+    }
+
+    private ReconnectPolicy(Duration baseDelay, Duration maxDelay, int maxAttempts, boolean jitter) {
+        this.baseDelay = Objects.requireNonNull(baseDelay, "baseDelay is null").toNanos();
+        this.maxDelay = Objects.requireNonNull(maxDelay, "maxDelay is null").toNanos();
+        this.maxAttempts = maxAttempts;
+        this.jitter = jitter;
+
+        if (this.baseDelay <= 0 || this.maxDelay < this.baseDelay)
+            throw new IllegalStateException("delay is invalid");
+
+        if (maxAttempts < 0)
+            throw new IllegalStateException("maxAttempts is invalid");
+    }
+
+    /**
+     * Reconnect after a fixed delay without jitter, the behaviour of the reconnect time
+     *
+     * @param delay Delay of every attempt
+     * @return The policy
+     */
+    public static ReconnectPolicy fixed(Duration delay) {
+        return new ReconnectPolicy(delay, delay, 0, false);
+    }
+
+    /**
+     * @param attempt Attempt since the last established connection, starting with 1
+     * @return Delay in nanoseconds, random between 0 and min(maxDelay, baseDelay * 2^(attempt - 1))
+     */
+    public long delay(int attempt) {
+        var shift = Math.min(attempt - 1, Long.numberOfLeadingZeros(baseDelay) - 1);//stop doubling before overflow
+        var cap = Math.min(maxDelay, baseDelay << Math.max(shift, 0));
+
+        return jitter ? ThreadLocalRandom.current().nextLong(cap + 1) : cap;
+    }
+
+    /**
+     * @param attempt Attempt since the last established connection, starting with 1
+     * @return True if the client should give up instead
+     */
+    public boolean isExhausted(int attempt) {
+        return maxAttempts != 0 && attempt > maxAttempts;
+    }
+}
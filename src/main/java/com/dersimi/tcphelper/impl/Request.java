@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+import java.util.Objects;
+
+/**
+ * Packet sent with {@link Partner#ask(Channel, Packet)}, delivered to the channel handler instead of the bare packet.
+ * Answer it with {@link #reply(Packet)}.
+ */
+public final class Request extends CorrelatedPacket {
+    private final Channel channel;
+
+    Request(Channel channel, long id, Packet packet) {
+        super(id, packet);
+
+        this.channel = channel;
+    }
+
+    @Override
+    int pseudoId() {
+        return REQUEST_ID;
+    }
+
+    /**
+     * Send the response, completes the future of the asking side
+     *
+     * @param response The response packet
+     * @return Write future
+     */
+    public ChannelFuture reply(Packet response) {
+        return channel.writeAndFlush(new Response(id, Objects.requireNonNull(response, "response is null")));
+    }
+
+    /**
+     * @return The request packet
+     */
+    public Packet getPacket() {
+        return packet;
+    }
+
+    /**
+     * @return Channel the request was received on
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return Correlation id, unique per channel and direction
+     */
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+/**
+ * Answer to a {@link Request}, completes the pending request with the same id and isn't passed to the channel handler
+ */
+final class Response extends CorrelatedPacket {
+    Response(long id, Packet packet) {
+        super(id, packet);
+    }
+
+    @Override
+    int pseudoId() {
+        return RESPONSE_ID;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.collection.LongObjectHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per channel table of pending requests sent with {@link Partner#ask(Channel, Packet)}. Completes them with their
+ * responses, the table is only touched by the channel's event loop.
+ */
+public class RpcHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger LOGGER = LogManager.getLogger(RpcHandler.class);
+
+    /**
+     * Channel attribute holding the handler, so asking doesn't have to search the pipeline
+     */
+    protected static final AttributeKey<RpcHandler> KEY = AttributeKey.valueOf(RpcHandler.class, "rpc");
+
+    private final LongObjectHashMap<Pending> pending;
+
+    private long nextId;
+
+    private boolean closed;
+
+    protected RpcHandler() {
+        this.pending = new LongObjectHashMap<>();
+    }
+
+    /**
+     * Sends the packet as request, the future completes on the event loop
+     *
+     * @param channel The channel
+     * @param packet  Request packet
+     * @param timeout Timeout in nanoseconds, 0 to wait until the channel is closed
+     * @return Future of the response packet
+     */
+    protected CompletableFuture<Packet> ask(Channel channel, Packet packet, long timeout) {
+        var future = new CompletableFuture<Packet>();
+
+        if (channel.eventLoop().inEventLoop())
+            send(channel, packet, timeout, future);
+        else
+            channel.eventLoop().execute(() -> send(channel, packet, timeout, future));
+
+        return future;
+    }
+
+    private void send(Channel channel, Packet packet, long timeout, CompletableFuture<Packet> future) {
+        if (closed || future.isDone()) {
+            ReferenceCountUtil.release(packet);
+            future.completeExceptionally(new ClosedChannelException());
+            return;
+        }
+
+        var id = nextId++;
+
+        //one shared wheel instead of a scheduled task per request, expiry hops back onto the event loop
+        var expiry = timeout > 0 ? Timer.INSTANCE.newTimeout(t -> channel.eventLoop().execute(() ->
+                fail(id, new TimeoutException("no response within " + TimeUnit.NANOSECONDS.toMillis(timeout) + "ms"))),
+                timeout, TimeUnit.NANOSECONDS) : null;
+
+        pending.put(id, new Pending(future, expiry));
+
+        future.whenComplete((response, cause) -> {
+            if (future.isCancelled())
+                channel.eventLoop().execute(() -> remove(id));
+        });
+
+        channel.writeAndFlush(new Request(channel, id, packet)).addListener((ChannelFutureListener) f -> {
+            if (!f.isSuccess())
+                fail(id, f.cause());
+        });
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof Response response)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+
+        var request = remove(response.id);
+
+        if (request == null) {
+            LOGGER.debug("Response {} from {} without pending request, probably timed out", response.id, ctx.channel().remoteAddress());
+            response.release();
+            return;
+        }
+
+        request.future.complete(response.packet);//pooled response packets are released by the receiver
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closed = true;
+
+        var requests = new ArrayList<>(pending.values());//callbacks of the futures may touch the table
+
+        pending.clear();
+
+        for (var request : requests) {
+            if (request.expiry != null)
+                request.expiry.cancel();
+
+            request.future.completeExceptionally(new ClosedChannelException());
+        }
+
+        super.channelInactive(ctx);
+    }
+
+    private void fail(long id, Throwable cause) {
+        var request = remove(id);
+
+        if (request != null)
+            request.future.completeExceptionally(cause);
+    }
+
+    private Pending remove(long id) {
+        var request = pending.remove(id);
+
+        if (request != null && request.expiry != null)
+            request.expiry.cancel();
+
+        return request;
+    }
+
+    /**
+     * @return Number of requests waiting for their response, only accurate on the event loop
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private record Pending(CompletableFuture<Packet> future, Timeout expiry) {
+    }
+
+    private static final class Timer {
+        //lazily started, daemon, so it doesn't keep the process alive
+        private static final HashedWheelTimer INSTANCE = new HashedWheelTimer(new DefaultThreadFactory("Rpc-Timer", true), 10, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded per channel queue of packets sent with {@link Partner#trySend(Channel, Packet)} while the channel isn't
+ * writable. Drained as soon as the channel becomes writable again.
+ */
+public class SendQueue extends ChannelInboundHandlerAdapter {
+
+    /**
+     * Channel attribute holding the queue, so sending doesn't have to search the pipeline
+     */
+    protected static final AttributeKey<SendQueue> KEY = AttributeKey.valueOf(SendQueue.class, "sendQueue");
+
+    private final Partner partner;
+
+    private final ArrayDeque<Packet> queue;//guarded by this, offered by any thread, drained by the event loop
+
+    private boolean closed, drainScheduled;
+
+    protected SendQueue(Partner partner) {
+        this.partner = partner;
+        this.queue = new ArrayDeque<>();
+    }
+
+    /**
+     * Writes the packet if the channel is writable and nothing is queued, queues it otherwise
+     *
+     * @param channel The channel
+     * @param packet  The packet
+     * @return Result
+     */
+    protected synchronized SendResult offer(Channel channel, Packet packet) {
+        if (closed || !channel.isActive())
+            return SendResult.REJECTED;
+
+        if (queue.isEmpty() && !drainScheduled && channel.isWritable()) {
+            channel.writeAndFlush(packet, channel.voidPromise());
+            return SendResult.ACCEPTED;
+        }
+
+        if (queue.size() >= partner.sendQueueLimit)
+            return SendResult.REJECTED;
+
+        queue.add(packet);
+        return SendResult.QUEUED;
+    }
+
+    /**
+     * @return Number of queued packets
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        var channel = ctx.channel();
+
+        //fired inline while flushing, accepted writes of other threads may still wait in the task queue, draining
+        //behind them keeps the order. Until the drain ran, offers queue instead of overtaking it.
+        if (channel.isWritable()) {
+            synchronized (this) {
+                drainScheduled = true;
+            }
+
+            ctx.executor().execute(() -> {
+                if (drain(channel) && partner.writabilityHandler != null)
+                    partner.writabilityHandler.writable(channel);
+            });
+        }
+
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * Writes queued packets until the queue is empty or the channel isn't writable anymore
+     *
+     * @return True if the queue is empty, false if the channel isn't writable anymore
+     */
+    private synchronized boolean drain(Channel channel) {
+        drainScheduled = false;
+
+        if (queue.isEmpty())
+            return channel.isWritable();
+
+        while (!queue.isEmpty() && channel.isWritable())
+            channel.write(queue.poll(), channel.voidPromise());
+
+        channel.flush();
+
+        return queue.isEmpty();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        synchronized (this) {
+            closed = true;
+
+            for (var packet : queue)
+                ReferenceCountUtil.release(packet);//pooled packets go back to their pool
+
+            queue.clear();
+        }
+
+        super.channelInactive(ctx);
+    }
+}
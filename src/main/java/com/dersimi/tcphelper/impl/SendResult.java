@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+/**
+ * Outcome of {@link Partner#trySend(io.netty.channel.Channel, Packet)}
+ */
+public enum SendResult {
+    /**
+     * Channel was writable, the packet has been written
+     */
+    ACCEPTED,
+
+    /**
+     * Channel wasn't writable, the packet waits in the send queue until it is
+     */
+    QUEUED,
+
+    /**
+     * Send queue is full or the channel is closed, the packet has been dropped
+     */
+    REJECTED
+}
@@ -18,56 +18,249 @@ package com.dersimi.tcphelper.impl;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelMatchers;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.Objects;
 
 public class Server extends Partner {
     private EventLoopGroup bossGroup, workerGroup;
 
+    private TransportRuntime retained;//reference on the shared runtime held while running
+
+    private File keyCertChainFile, keyFile;
+
+    private String keyPassword;
+
+    private int binds;
+
+    private final Map<ChannelOption<?>, Object> childOptions;
+
+    protected final ChannelGroup channels;//server channels and accepted channels, closed on shutdown
+
     /**
      * @param port           Port number
      * @param channelHandler ChannelHandler, {@link ChannelHandler}, may be null
-     * @param epoll          True if epoll is permitted.
+     * @param epoll          True if epoll is permitted, see {@link #setTransport(Transport)} for io_uring
      * @param ssl            True if ssl should be used.
      * @param charset        Charset, in case of null, the default charset US_ASCII is used.
      * @param timeout        read timeout in seconds, is disabled in case of 0
      */
     public Server(int port, ChannelHandler channelHandler, boolean epoll, boolean ssl, Charset charset, int timeout) {
         super(port, channelHandler, epoll, ssl, charset, timeout);
+
+        this.binds = 1;
+        this.childOptions = new LinkedHashMap<>();
+        this.channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    }
+
+    /**
+     * Bind the port multiple times with SO_REUSEPORT, each bind accepts on its own event loop and the kernel
+     * spreads incoming connections across them. Only supported by the native transports, nio always binds once.
+     *
+     * @param binds Number of binds, 1 to bind once
+     * @throws IllegalStateException If binds is invalid
+     */
+    public void setReusePortBinds(int binds) {
+        if (binds < 1)
+            throw new IllegalStateException("binds is invalid");
+
+        this.binds = binds;
+    }
+
+    /**
+     * Set certificate and private key, if not set, a self-signed certificate is generated once on init
+     *
+     * @param keyCertChainFile X.509 certificate chain file in PEM format
+     * @param keyFile          PKCS#8 private key file in PEM format
+     * @param keyPassword      Password of the key file, null if it's not password-protected
+     */
+    public void setSslCertificate(File keyCertChainFile, File keyFile, String keyPassword) {
+        this.keyCertChainFile = Objects.requireNonNull(keyCertChainFile, "keyCertChainFile is null");
+        this.keyFile = Objects.requireNonNull(keyFile, "keyFile is null");
+        this.keyPassword = keyPassword;
     }
 
     /**
-     * Initialize server
+     * Set an option of accepted connections, applied on init
+     *
+     * @param option The option, e.g. {@link ChannelOption#TCP_NODELAY}
+     * @param value  The value, null to remove the option
+     * @param <T>    Option type
+     */
+    public <T> void setChildOption(ChannelOption<T> option, T value) {
+        setOption(childOptions, option, value);
+    }
+
+    @Override
+    protected SslContext createSslContext() throws SSLException, CertificateException {
+        SslContext context;
+
+        if (keyCertChainFile != null) {
+            context = configureSsl(SslContextBuilder.forServer(keyCertChainFile, keyFile, keyPassword)).build();
+        } else {
+            var ssc = new SelfSignedCertificate();
+
+            try {
+                context = configureSsl(SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())).build();
+            } finally {
+                ssc.delete();
+            }
+        }
+
+        //let OpenSSL generate and rotate the ticket keys, clients can then resume without a server side cache entry
+        if (context.sessionContext() instanceof OpenSslSessionContext sessionContext)
+            sessionContext.setTicketKeys();
+
+        return context;
+    }
+
+    /**
+     * Initialize server, blocks until the server is closed
      */
     @Override
     public void init() throws InterruptedException {
-        bossGroup = createGroup(1);
-        workerGroup = createGroup(0);
+        await(start());
 
-        var b = new ServerBootstrap();
-        b.group(bossGroup, workerGroup).channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class).childHandler(new Initializer(this));
+        closeFuture.join();
+    }
+
+    /**
+     * Start server without blocking, it's shut down once all server channels are closed
+     *
+     * @return Future completed with the bound address once all binds succeeded
+     * @throws IllegalStateException If the server is already running
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized CompletableFuture<InetSocketAddress> start() {
+        if (!closeFuture.isDone())
+            throw new IllegalStateException("server is already running");
+
+        freezePackets();
+        initSsl();
+
+        var binds = transport.supportsReusePort() ? this.binds : 1;
 
-        try {
-            b.bind(port).sync().channel().closeFuture().syncUninterruptibly();
-        } finally {
-            shutdown();
+        if (runtime != null) {
+            retained = runtime.retain();
+            bossGroup = runtime.getBossGroup();
+            workerGroup = runtime.getWorkerGroup();
+        } else {
+            bossGroup = createGroup(binds);//every bind is registered on the next event loop
+            workerGroup = createGroup(0);
         }
+
+        var close = closeFuture = new CompletableFuture<>();
+
+        var b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup).channel(transport.serverChannelClass()).childHandler(new Initializer(this));
+
+        for (var option : options.entrySet())
+            b.option((ChannelOption<Object>) option.getKey(), option.getValue());
+
+        for (var option : connectionOptions(childOptions).entrySet())
+            b.childOption((ChannelOption<Object>) option.getKey(), option.getValue());
+
+        if (binds > 1)
+            b.option(UnixChannelOption.SO_REUSEPORT, true);
+
+        return bind(b, port).thenCompose(first -> {
+            //port 0 binds a random port, the other binds have to join it
+            var address = (InetSocketAddress) first.localAddress();
+            var listeners = new ArrayList<CompletableFuture<Channel>>(binds);
+
+            listeners.add(CompletableFuture.completedFuture(first));
+
+            for (int i = 1; i < binds; i++)
+                listeners.add(bind(b, address.getPort()));
+
+            return CompletableFuture.allOf(listeners.toArray(CompletableFuture[]::new)).thenApply(v -> {
+                var closed = listeners.stream().map(l -> completable(l.join().closeFuture()));
+
+                CompletableFuture.allOf(closed.toArray(CompletableFuture[]::new)).thenRun(() -> shutdownAsync(close));
+
+                return address;
+            });
+        }).exceptionallyCompose(cause -> shutdownAsync(close).thenCompose(v -> CompletableFuture.failedFuture(cause)));
+    }
+
+    private CompletableFuture<Channel> bind(ServerBootstrap b, int port) {
+        var future = b.bind(port);
+
+        channels.add(future.channel());//closed on shutdown, even if the bind is still pending
+
+        return completable(future);
+    }
+
+    //the close listeners run on an event loop, shutdown() has to wait for them
+    private CompletableFuture<Void> shutdownAsync(CompletableFuture<Void> close) {
+        return CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                if (closeFuture == close)//not restarted in the meantime
+                    shutdown();
+            }
+        });
     }
 
     /**
      * Terminate server
      */
     @Override
-    public void shutdown() {
-        if (bossGroup != null)
-            bossGroup.shutdownGracefully();
+    public synchronized void shutdown() {
+        //io_uring loops don't terminate while channels are open, so stop accepting first, let the accepted
+        //channels finish their registration and close all of them before the workers are shut down
+        channels.close(ChannelMatchers.isServerChannel()).awaitUninterruptibly();
+
+        if (bossGroup != null && retained == null) {
+            var termination = bossGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+
+            if (!inEventLoop(bossGroup))
+                termination.awaitUninterruptibly();
+        }
 
         if (workerGroup != null)
+            for (var executor : workerGroup)
+                if (!executor.inEventLoop())
+                    executor.submit(() -> {}).awaitUninterruptibly();//registrations are queued before this task
+
+        channels.close().awaitUninterruptibly();
+
+        if (retained != null)
+            retained.release();//shared groups keep running until the runtime's last reference is released
+        else if (workerGroup != null)
             workerGroup.shutdownGracefully();
 
+        retained = null;
+
         bossGroup = null;
         workerGroup = null;
+
+        closeFuture.complete(null);
+    }
+
+    private static boolean inEventLoop(EventLoopGroup group) {
+        for (var executor : group)
+            if (executor.inEventLoop())
+                return true;
+
+        return false;
     }
 }
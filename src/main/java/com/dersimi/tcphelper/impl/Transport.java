@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Network transport, native transports fall back to the next one if they aren't available:
+ * IO_URING -> EPOLL -> NIO
+ */
+public enum Transport {
+    NIO,
+
+    /**
+     * Linux only
+     */
+    EPOLL,
+
+    /**
+     * Linux 5.9+ only, uses netty's incubator transport
+     */
+    IO_URING;
+
+    /**
+     * @return True if this transport can be used on this machine
+     */
+    public boolean isAvailable() {
+        return switch (this) {
+            case NIO -> true;
+            case EPOLL -> Epoll.isAvailable();
+            case IO_URING -> isIOUringAvailable();
+        };
+    }
+
+    /**
+     * Returns this transport if it's available, otherwise the best available fallback
+     *
+     * @return Available transport
+     */
+    public Transport resolve() {
+        if (isAvailable())
+            return this;
+
+        return this == IO_URING ? EPOLL.resolve() : NIO;
+    }
+
+    /**
+     * @return True if server channels of this transport support SO_REUSEPORT
+     */
+    public boolean supportsReusePort() {
+        return this != NIO;
+    }
+
+    /**
+     * Creates an event loop group of this transport
+     *
+     * @param threads       Number of threads, 0 for netty's default
+     * @param threadFactory Thread factory
+     * @return The group
+     */
+    public EventLoopGroup newGroup(int threads, ThreadFactory threadFactory) {
+        return switch (this) {
+            case NIO -> new NioEventLoopGroup(threads, threadFactory);
+            case EPOLL -> new EpollEventLoopGroup(threads, threadFactory);
+            case IO_URING -> new IOUringEventLoopGroup(threads, threadFactory);
+        };
+    }
+
+    /**
+     * @return Server channel class matching the event loop group
+     */
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return switch (this) {
+            case NIO -> NioServerSocketChannel.class;
+            case EPOLL -> EpollServerSocketChannel.class;
+            case IO_URING -> IOUringServerSocketChannel.class;
+        };
+    }
+
+    /**
+     * @return Client channel class matching the event loop group
+     */
+    public Class<? extends SocketChannel> channelClass() {
+        return switch (this) {
+            case NIO -> NioSocketChannel.class;
+            case EPOLL -> EpollSocketChannel.class;
+            case IO_URING -> IOUringSocketChannel.class;
+        };
+    }
+
+    private static boolean isIOUringAvailable() {
+        try {
+            return IOUring.isAvailable();
+        } catch (LinkageError e) {//classes or native library missing
+            return false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.Objects;
+
+/**
+ * Event loop groups and allocator shared by many clients/servers, so a process holding hundreds of partners
+ * doesn't hold hundreds of thread pools.
+ * <p>
+ * Reference counted: the creator holds one reference, every running client/server retains one and releases it on
+ * shutdown. The groups are shut down when the last reference is released.
+ */
+public final class TransportRuntime extends AbstractReferenceCounted {
+    private final Transport transport;
+
+    private final EventLoopGroup bossGroup, workerGroup;
+
+    private final ByteBufAllocator allocator;
+
+    /**
+     * Runtime with one accept thread, netty's default number of worker threads and the pooled allocator
+     *
+     * @param transport Transport, falls back like {@link Partner#setTransport(Transport)}
+     */
+    public TransportRuntime(Transport transport) {
+        this(transport, 1, 0, PooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * @param transport     Transport, falls back like {@link Partner#setTransport(Transport)}
+     * @param bossThreads   Accept threads of servers, at least the number of SO_REUSEPORT binds
+     * @param workerThreads Threads serving connections, 0 for netty's default (2 * cores)
+     * @param allocator     Allocator of all connections
+     */
+    public TransportRuntime(Transport transport, int bossThreads, int workerThreads, ByteBufAllocator allocator) {
+        if (bossThreads < 1 || workerThreads < 0)
+            throw new IllegalStateException("threads are invalid");
+
+        this.transport = Objects.requireNonNull(transport, "transport is null").resolve();
+        this.allocator = Objects.requireNonNull(allocator, "allocator is null");
+        this.bossGroup = this.transport.newGroup(bossThreads, new DefaultThreadFactory("Network-Boss"));
+        this.workerGroup = this.transport.newGroup(workerThreads, new DefaultThreadFactory("Network"));
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return Group accepting connections of servers
+     */
+    public EventLoopGroup getBossGroup() {
+        return bossGroup;
+    }
+
+    /**
+     * @return Group serving client connections and accepted connections
+     */
+    public EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public TransportRuntime touch(Object hint) {
+        return this;
+    }
+
+    @Override
+    public TransportRuntime retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+    }
+}
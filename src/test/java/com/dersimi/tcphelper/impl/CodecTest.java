@@ -0,0 +1,243 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import com.dersimi.tcphelper.ServerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodecTest {
+
+    @Test
+    void wrapperIsReusedAcrossPackets() {
+        for (var compact : new boolean[]{false, true}) {
+            var partner = partner(compact, -1);
+            var encoder = encoder(partner);
+            var decoder = new EmbeddedChannel(new Decoder(partner));
+
+            var sent = new ValuePacket[]{new ValuePacket(1), new ValuePacket(2), new ValuePacket(3)};
+
+            assertTrue(encoder.writeOutbound((Object[]) sent));
+
+            ByteBuf frame;
+            while ((frame = encoder.readOutbound()) != null)
+                decoder.writeInbound(frame);
+
+            var received = new ArrayList<ValuePacket>();
+            ValuePacket packet;
+            while ((packet = decoder.readInbound()) != null)
+                received.add(packet);
+
+            assertEquals(sent.length, received.size());
+
+            for (int i = 0; i < sent.length; i++) {
+                assertEquals(sent[i].value, received.get(i).value);
+
+                //one wrapper per channel and direction, no allocation per packet
+                assertSame(sent[0].buffers.get(0), sent[i].buffers.get(0));
+                assertSame(received.get(0).buffers.get(0), received.get(i).buffers.get(0));
+            }
+
+            assertFalse(encoder.finish());
+            assertFalse(decoder.finish());
+        }
+    }
+
+    @Test
+    void roundTripInAllWireFormats() {
+        for (var partner : partners()) {
+            var encoder = encoder(partner);
+            var decoder = new EmbeddedChannel(new Decoder(partner));
+            var text = "x".repeat(200);
+
+            assertTrue(encoder.writeOutbound(new ValuePacket(1, text), new Request(encoder, 7, new ValuePacket(2, text)),
+                    new Response(300, new ValuePacket(3, ""))));
+
+            var bytes = 0;
+            ByteBuf frame;
+            while ((frame = encoder.readOutbound()) != null) {
+                bytes += frame.readableBytes();
+                decoder.writeInbound(frame);
+            }
+
+            if (partner.isCompressionEnabled())
+                assertTrue(bytes < 2 * text.length(), "frames weren't compressed: " + bytes + " bytes");
+
+            var plain = assertInstanceOf(ValuePacket.class, decoder.readInbound());
+            assertEquals(1, plain.value);
+            assertEquals(text, plain.text);
+
+            var request = assertInstanceOf(Request.class, decoder.readInbound());
+            assertEquals(7, request.getId());
+            assertEquals(2, ((ValuePacket) request.getPacket()).value);
+            assertEquals(text, ((ValuePacket) request.getPacket()).text);
+
+            var response = assertInstanceOf(Response.class, decoder.readInbound());
+            assertEquals(300, response.id);
+            assertEquals(3, ((ValuePacket) response.packet).value);
+
+            assertNull(decoder.readInbound());
+            assertFalse(encoder.finish());
+            assertFalse(decoder.finish());
+        }
+    }
+
+    @Test
+    void framesSplitByteByByte() {
+        for (var partner : partners()) {
+            var encoder = encoder(partner);
+            var decoder = new EmbeddedChannel(new Decoder(partner));
+
+            assertTrue(encoder.writeOutbound(new ValuePacket(1, "y".repeat(100)), new ValuePacket(Long.MAX_VALUE, "")));
+
+            var stream = Unpooled.buffer();
+            ByteBuf frame;
+            while ((frame = encoder.readOutbound()) != null) {
+                stream.writeBytes(frame);
+                frame.release();
+            }
+
+            //every byte arrives alone, the decoder has to wait for the rest of the frame
+            while (stream.isReadable())
+                decoder.writeInbound(stream.readRetainedSlice(1));
+
+            stream.release();
+
+            var first = assertInstanceOf(ValuePacket.class, decoder.readInbound());
+            assertEquals(1, first.value);
+            assertEquals("y".repeat(100), first.text);
+
+            var second = assertInstanceOf(ValuePacket.class, decoder.readInbound());
+            assertEquals(Long.MAX_VALUE, second.value);
+
+            assertNull(decoder.readInbound());
+            assertFalse(decoder.finish());
+        }
+    }
+
+    @Test
+    void droppedPacketsPassTheCompressor() {
+        var factory = new ServerFactory();
+        factory.setCompressionThreshold(0);
+        factory.setMaxFrameSize(64);
+        factory.registerPacket(1, ValuePacket::new);
+
+        var partner = factory.create();
+        var encoder = encoder(partner);
+        var decoder = new EmbeddedChannel(new Decoder(partner));
+
+        //the encoder logs and drops both, the compressor gets an empty buffer and mustn't fail the write
+        var unregistered = encoder.writeOneOutbound(new UnregisteredPacket());
+        var oversize = encoder.writeOneOutbound(new ValuePacket(1, "z".repeat(500)));
+        var valid = encoder.writeOneOutbound(new ValuePacket(2, "z".repeat(20)));
+        encoder.flushOutbound();
+
+        assertTrue(unregistered.isSuccess(), () -> "unregistered packet: " + unregistered.cause());
+        assertTrue(oversize.isSuccess(), () -> "oversize packet: " + oversize.cause());
+        assertTrue(valid.isSuccess(), () -> "valid packet: " + valid.cause());
+
+        ByteBuf frame;
+        while ((frame = encoder.readOutbound()) != null)
+            decoder.writeInbound(frame);
+
+        assertEquals(2, assertInstanceOf(ValuePacket.class, decoder.readInbound()).value);
+        assertNull(decoder.readInbound());
+        assertFalse(encoder.finish());
+        assertFalse(decoder.finish());
+    }
+
+    /**
+     * @return Partners with plain and compact wire format, each with and without compression
+     */
+    static List<Partner> partners() {
+        var partners = new ArrayList<Partner>();
+
+        for (var compact : new boolean[]{false, true})
+            for (var threshold : new int[]{-1, 0})
+                partners.add(partner(compact, threshold));
+
+        return partners;
+    }
+
+    static Partner partner(boolean compact, int compressionThreshold) {
+        var factory = new ServerFactory();
+        factory.setCompactWireFormat(compact);
+        factory.setCompressionThreshold(compressionThreshold);
+        factory.registerPacket(1, ValuePacket::new);
+
+        return factory.create();
+    }
+
+    /**
+     * Channel with the outbound half of the pipeline, the compressor is placed in front of the encoder like on init
+     */
+    static EmbeddedChannel encoder(Partner partner) {
+        return partner.isCompressionEnabled() ? new EmbeddedChannel(new Compressor(partner), new Encoder(partner)) : new EmbeddedChannel(new Encoder(partner));
+    }
+
+    static class ValuePacket implements Packet {
+        final List<PacketByteBuf> buffers = new ArrayList<>();//wrappers passed to read and write
+
+        long value;
+
+        String text = "";
+
+        ValuePacket() {
+        }
+
+        ValuePacket(long value) {
+            this.value = value;
+        }
+
+        ValuePacket(long value, String text) {
+            this.value = value;
+            this.text = text;
+        }
+
+        @Override
+        public void read(Channel channel, PacketByteBuf in) {
+            buffers.add(in);
+            value = in.readVarLong();
+            text = in.readString();
+        }
+
+        @Override
+        public void write(PacketByteBuf out) {
+            buffers.add(out);
+            out.writeVarLong(value);
+            out.writeString(text);
+        }
+    }
+
+    static class UnregisteredPacket implements Packet {
+        @Override
+        public void read(Channel channel, PacketByteBuf in) {
+        }
+
+        @Override
+        public void write(PacketByteBuf out) {
+        }
+    }
+}
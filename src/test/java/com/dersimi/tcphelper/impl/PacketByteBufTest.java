@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.dersimi.tcphelper.impl;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PacketByteBufTest {
+
+    @Test
+    void stringsRoundTrip() {
+        for (var compact : new boolean[]{false, true}) {
+            var buf = new PacketByteBuf(Unpooled.buffer(), StandardCharsets.UTF_8, compact);
+            var strings = new String[]{"", "a", "äöü", "x".repeat(300)};
+
+            buf.writeStrings(strings);
+
+            assertArrayEquals(strings, buf.readStrings());
+            assertEquals(0, buf.readableBytes());
+        }
+    }
+
+    @Test
+    void readStringsRejectsCountBeyondReadableBytes() {
+        for (var compact : new boolean[]{false, true}) {
+            var byteBuf = Unpooled.buffer();
+
+            if (compact)
+                PacketByteBuf.writeVarInt(byteBuf, Integer.MAX_VALUE);
+            else
+                byteBuf.writeInt(Integer.MAX_VALUE);
+
+            var buf = new PacketByteBuf(byteBuf, StandardCharsets.UTF_8, compact);
+
+            assertThrows(IndexOutOfBoundsException.class, buf::readStrings);
+        }
+    }
+
+    @Test
+    void varLongRoundTrip() {
+        var buf = new PacketByteBuf(Unpooled.buffer(), StandardCharsets.US_ASCII, true);
+
+        for (var value : new long[]{0, 1, 127, 128, 1L << 40, -1, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            buf.writeVarLong(value);
+            assertEquals(value, PacketByteBuf.readVarLong(buf));
+
+            PacketByteBuf.writeVarLong(buf, value);
+            assertEquals(value, buf.readVarLong());
+        }
+    }
+}
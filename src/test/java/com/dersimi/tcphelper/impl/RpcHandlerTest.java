@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import com.dersimi.tcphelper.ClientFactory;
+import com.dersimi.tcphelper.ServerFactory;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcHandlerTest {
+
+    private Server server;
+
+    private Client client;
+
+    private Channel channel;
+
+    @BeforeEach
+    void connect() throws Exception {
+        var serverFactory = new ServerFactory();
+        serverFactory.setPort(0);
+        serverFactory.setChannelHandler(new Responder());
+        serverFactory.registerPacket(1, CodecTest.ValuePacket::new);
+
+        server = serverFactory.create();
+        var port = server.start().get(10, TimeUnit.SECONDS).getPort();
+
+        var clientFactory = new ClientFactory();
+        clientFactory.setHost("127.0.0.1");
+        clientFactory.setPort(port);
+        clientFactory.registerPacket(1, CodecTest.ValuePacket::new);
+
+        client = clientFactory.create();
+        channel = client.start().get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.stop(5, TimeUnit.SECONDS);
+        server.stop(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void askCompletesWithResponse() throws Exception {
+        var first = client.ask(channel, new CodecTest.ValuePacket(1));
+        var second = client.ask(channel, new CodecTest.ValuePacket(41));
+
+        assertEquals(42, ((CodecTest.ValuePacket) second.get(10, TimeUnit.SECONDS)).value);
+        assertEquals(2, ((CodecTest.ValuePacket) first.get(10, TimeUnit.SECONDS)).value);
+    }
+
+    @Test
+    void askTimesOut() {
+        var future = client.ask(channel, new CodecTest.ValuePacket(-1), Duration.ofMillis(100));
+
+        var e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+    }
+
+    @Test
+    void askFailsOnClose() throws Exception {
+        var future = client.ask(channel, new CodecTest.ValuePacket(-1), Duration.ZERO);
+
+        channel.close().sync();
+
+        var e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ClosedChannelException.class, e.getCause());
+
+        //asking on a closed channel fails right away
+        var late = client.ask(channel, new CodecTest.ValuePacket(1));
+
+        e = assertThrows(ExecutionException.class, () -> late.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ClosedChannelException.class, e.getCause());
+    }
+
+    /**
+     * Answers requests with value + 1, negative values are never answered
+     */
+    @ChannelHandler.Sharable
+    private static class Responder extends SimpleChannelInboundHandler<Request> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Request request) {
+            var value = ((CodecTest.ValuePacket) request.getPacket()).value;
+
+            if (value >= 0)
+                request.reply(new CodecTest.ValuePacket(value + 1));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import com.dersimi.tcphelper.ClientFactory;
+import com.dersimi.tcphelper.ServerFactory;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendQueueTest {
+
+    @Test
+    void trySendKeepsOrder() throws Exception {
+        var received = Collections.synchronizedList(new ArrayList<Long>());
+
+        var serverFactory = new ServerFactory();
+        serverFactory.setPort(0);
+        serverFactory.setChannelHandler(new Recorder(received));
+        serverFactory.registerPacket(1, CodecTest.ValuePacket::new);
+
+        var server = serverFactory.create();
+        var port = server.start().get(10, TimeUnit.SECONDS).getPort();
+
+        var clientFactory = new ClientFactory();
+        clientFactory.setHost("127.0.0.1");
+        clientFactory.setPort(port);
+        clientFactory.setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(1024, 4096));
+        clientFactory.setSendQueueLimit(8);
+        clientFactory.registerPacket(1, CodecTest.ValuePacket::new);
+
+        var client = clientFactory.create();
+
+        try {
+            var channel = client.start().get(10, TimeUnit.SECONDS);
+            var payload = "k".repeat(1000);
+
+            var results = EnumSet.noneOf(SendResult.class);
+            var sent = new ArrayList<Long>();
+
+            for (long i = 0; i < 2000; i++) {
+                var result = client.trySend(channel, new CodecTest.ValuePacket(i, payload));
+
+                if (i == 0)
+                    assertEquals(SendResult.ACCEPTED, result);
+
+                if (result != SendResult.REJECTED)
+                    sent.add(i);
+
+                results.add(result);
+            }
+
+            assertEquals(EnumSet.allOf(SendResult.class), results);
+
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+            while (received.size() < sent.size() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+
+            //accepted and queued packets arrive in the order they were offered, rejected ones never
+            assertEquals(sent, List.copyOf(received));
+
+            channel.close().sync();
+
+            assertEquals(SendResult.REJECTED, client.trySend(channel, new CodecTest.ValuePacket(0)));
+        } finally {
+            client.stop(5, TimeUnit.SECONDS);
+            server.stop(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private static class Recorder extends SimpleChannelInboundHandler<CodecTest.ValuePacket> {
+        private final List<Long> received;
+
+        Recorder(List<Long> received) {
+            this.received = received;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, CodecTest.ValuePacket packet) {
+            received.add(packet.value);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 DerSimi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dersimi.tcphelper.impl;
+
+import com.dersimi.tcphelper.ClientFactory;
+import com.dersimi.tcphelper.ServerFactory;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslHandler;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SslResumptionTest {
+
+    @Test
+    void reconnectResumesSession() throws Exception {
+        assumeTrue(OpenSsl.isAvailable());
+
+        var serverFactory = new ServerFactory();
+        serverFactory.setPort(0);
+        serverFactory.setSsl(true);
+
+        var server = serverFactory.create();
+        var port = server.start().get(10, TimeUnit.SECONDS).getPort();
+
+        var clientFactory = new ClientFactory();
+        clientFactory.setHost("127.0.0.1");
+        clientFactory.setPort(port);
+        clientFactory.setSsl(true);
+
+        var client = clientFactory.create();
+
+        try {
+            var first = connect(client);
+            assertEquals("TLSv1.3", first.getSession().getProtocol());
+            assertFalse(isSessionReused(first));
+
+            //the ticket arrives after the handshake, keep the connection until the client cached it
+            var sessionContext = (OpenSslSessionContext) client.sslContext.sessionContext();
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+            while (!sessionContext.getIds().hasMoreElements() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+
+            client.getChannel().close().sync();
+
+            var second = connect(client);
+            assertTrue(isSessionReused(second));
+        } finally {
+            client.stop(5, TimeUnit.SECONDS);
+            server.stop(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ReferenceCountedOpenSslEngine connect(Client client) throws Exception {
+        var channel = client.start().get(10, TimeUnit.SECONDS);
+        var sslHandler = channel.pipeline().get(SslHandler.class);
+
+        sslHandler.handshakeFuture().get(10, TimeUnit.SECONDS);
+
+        return (ReferenceCountedOpenSslEngine) sslHandler.engine();
+    }
+
+    private static boolean isSessionReused(ReferenceCountedOpenSslEngine engine) throws ReflectiveOperationException {
+        //package-private in netty
+        var method = ReferenceCountedOpenSslEngine.class.getDeclaredMethod("isSessionReused");
+        method.setAccessible(true);
+
+        return (boolean) method.invoke(engine);
+    }
+}